@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.benchmark;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.jboss.vfs.TempFileProvider;
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VFSUtils;
+import org.jboss.vfs.VirtualFile;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Generated fixture content shared by the benchmarks: a directory tree and a jar with the same layout, each mounted
+ * into the VFS.  The tree holds {@code entries} files spread over directories nested {@code depth} levels deep.
+ */
+@State(Scope.Benchmark)
+public class Fixture {
+
+    @Param("1000")
+    public int entries;
+
+    @Param("4")
+    public int depth;
+
+    @Param("1024")
+    public int entrySize;
+
+    File workDir;
+    File treeDir;
+    File jarFile;
+    TempFileProvider tempFileProvider;
+    VirtualFile realRoot;
+    VirtualFile zipRoot;
+    /** The paths of all files, relative to either root. */
+    String[] paths;
+
+    private ScheduledExecutorService executor;
+    private final List<Closeable> mounts = new ArrayList<Closeable>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("vfs-bench").toFile();
+        treeDir = new File(workDir, "tree");
+        jarFile = new File(workDir, "fixture.jar");
+        paths = createPaths(entries, depth);
+        final byte[] content = new byte[entrySize];
+        for (int i = 0; i < content.length; i++) {
+            // compressible, but not trivially so
+            content[i] = (byte) (i * 31 >> 3);
+        }
+        try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(jarFile))) {
+            for (String path : paths) {
+                final File file = new File(treeDir, path);
+                file.getParentFile().mkdirs();
+                Files.write(file.toPath(), content);
+                jos.putNextEntry(new JarEntry(path));
+                jos.write(content);
+            }
+        }
+        executor = Executors.newSingleThreadScheduledExecutor();
+        tempFileProvider = TempFileProvider.create("vfs-bench", executor, true);
+        realRoot = VFS.getChild("/vfs-bench/real");
+        zipRoot = VFS.getChild("/vfs-bench/zip");
+        mounts.add(VFS.mountReal(treeDir, realRoot));
+        mounts.add(VFS.mountZip(jarFile, zipRoot, tempFileProvider));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        VFSUtils.safeClose(mounts);
+        mounts.clear();
+        VFSUtils.safeClose(tempFileProvider);
+        executor.shutdown();
+        VFSUtils.recursiveDelete(workDir);
+    }
+
+    VirtualFile getRoot(String kind) {
+        return "zip".equals(kind) ? zipRoot : realRoot;
+    }
+
+    /**
+     * Spread the entries evenly over a tree of the given depth, in depth-first order.
+     */
+    static String[] createPaths(int entries, int depth) {
+        final int fanout = Math.max(2, (int) Math.ceil(Math.pow(entries, 1.0 / (depth + 1))));
+        final String[] paths = new String[entries];
+        final StringBuilder b = new StringBuilder();
+        for (int i = 0; i < entries; i++) {
+            b.setLength(0);
+            int rest = i / fanout;
+            for (int level = 0; level < depth; level++) {
+                b.append("dir").append(rest % fanout).append('/');
+                rest /= fanout;
+            }
+            paths[i] = b.append("Entry").append(i).append(".class").toString();
+        }
+        return paths;
+    }
+}
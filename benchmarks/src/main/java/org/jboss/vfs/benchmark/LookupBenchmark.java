@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.vfs.FileAttributes;
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.util.PathTokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Path resolution and stat calls on real and zip mounts.  Each invocation works on the next file of the fixture, so
+ * that lookups are not all served from the same cache lines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+    @Param({"real", "zip"})
+    public String kind;
+
+    private VirtualFile root;
+    private VirtualFile[] files;
+    private String[] paths;
+    private int next;
+
+    @Setup
+    public void setUp(Fixture fixture) {
+        root = fixture.getRoot(kind);
+        paths = fixture.paths;
+        files = new VirtualFile[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            files[i] = root.getChild(paths[i]);
+        }
+    }
+
+    private int nextIndex() {
+        final int i = next;
+        next = i + 1 == paths.length ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public VirtualFile getChild() {
+        return root.getChild(paths[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean exists() {
+        return files[nextIndex()].exists();
+    }
+
+    @Benchmark
+    public void stat(Blackhole bh) {
+        final VirtualFile file = files[nextIndex()];
+        bh.consume(file.isFile());
+        bh.consume(file.getSize());
+        bh.consume(file.getLastModified());
+    }
+
+    @Benchmark
+    public FileAttributes getAttributes() {
+        return files[nextIndex()].getAttributes();
+    }
+
+    @Benchmark
+    public boolean missing() {
+        return root.getChild(paths[nextIndex()] + ".missing").exists();
+    }
+
+    @Benchmark
+    public List<String> tokenize() {
+        return PathTokenizer.getTokens(files[nextIndex()].getPathName());
+    }
+}
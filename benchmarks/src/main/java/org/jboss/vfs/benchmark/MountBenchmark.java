@@ -0,0 +1,60 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.benchmark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VirtualFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mounting and unmounting, including the indexing of a zip archive.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MountBenchmark {
+
+    @Benchmark
+    public VirtualFile mountZip(Fixture fixture) throws IOException {
+        final VirtualFile mountPoint = VFS.getChild("/vfs-bench/mount/zip");
+        final Closeable handle = VFS.mountZip(fixture.jarFile, mountPoint, fixture.tempFileProvider);
+        handle.close();
+        return mountPoint;
+    }
+
+    @Benchmark
+    public VirtualFile mountReal(Fixture fixture) throws IOException {
+        final VirtualFile mountPoint = VFS.getChild("/vfs-bench/mount/real");
+        final Closeable handle = VFS.mountReal(fixture.treeDir, mountPoint);
+        handle.close();
+        return mountPoint;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.vfs.VirtualFilePermission;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Permission checks as performed by the security manager on every virtual file operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PermissionBenchmark {
+
+    private VirtualFilePermission recursive;
+    private VirtualFilePermission children;
+    private VirtualFilePermission exact;
+    private VirtualFilePermission deep;
+    private VirtualFilePermission outside;
+
+    @Setup
+    public void setUp() {
+        final String deepPath = "/content/app.ear/lib/util.jar/org/jboss/vfs/util/PathTokenizer.class";
+        recursive = new VirtualFilePermission("/content/-", "read,getfile");
+        children = new VirtualFilePermission("/content/app.ear/lib/util.jar/org/jboss/vfs/util/*", "read");
+        exact = new VirtualFilePermission(deepPath, "read");
+        deep = new VirtualFilePermission(deepPath, "read");
+        outside = new VirtualFilePermission("/other/app.ear/lib/util.jar/org/jboss/vfs/util/PathTokenizer.class", "read");
+    }
+
+    @Benchmark
+    public boolean impliesRecursive() {
+        return recursive.implies(deep);
+    }
+
+    @Benchmark
+    public boolean impliesChildren() {
+        return children.implies(deep);
+    }
+
+    @Benchmark
+    public boolean impliesExact() {
+        return exact.implies(deep);
+    }
+
+    @Benchmark
+    public boolean impliesMismatch() {
+        return recursive.implies(outside);
+    }
+}
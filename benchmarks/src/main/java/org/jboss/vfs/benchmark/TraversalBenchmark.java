@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.VirtualJarFileInputStream;
+import org.jboss.vfs.VirtualJarInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole-tree operations: recursive listing, and streaming a mounted tree back out as a jar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TraversalBenchmark {
+
+    @Param({"real", "zip"})
+    public String kind;
+
+    @Benchmark
+    public List<VirtualFile> getChildrenRecursively(Fixture fixture) throws IOException {
+        return fixture.getRoot(kind).getChildrenRecursively();
+    }
+
+    @Benchmark
+    public long virtualJarFileInputStream(Fixture fixture) throws IOException {
+        try (InputStream in = new VirtualJarFileInputStream(new VirtualJarInputStream(fixture.getRoot(kind)))) {
+            return drain(in);
+        }
+    }
+
+    private static long drain(InputStream in) throws IOException {
+        final byte[] buffer = new byte[8192];
+        long total = 0L;
+        int res;
+        while ((res = in.read(buffer)) != -1) {
+            total += res;
+        }
+        return total;
+    }
+}
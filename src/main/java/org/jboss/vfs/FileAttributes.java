@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs;
+
+/**
+ * The basic attributes of a virtual file, as read at a single point in time.  This allows callers which need more than
+ * one of these values to obtain them with one filesystem call rather than several.
+ */
+public final class FileAttributes {
+
+    /**
+     * The attributes of a file which does not exist.
+     */
+    public static final FileAttributes NON_EXISTENT = new FileAttributes(false, false, false, 0L, 0L);
+
+    private final boolean exists;
+    private final boolean file;
+    private final boolean directory;
+    private final long size;
+    private final long lastModified;
+
+    private FileAttributes(boolean exists, boolean file, boolean directory, long size, long lastModified) {
+        this.exists = exists;
+        this.file = file;
+        this.directory = directory;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Get the attributes of an existing plain file.
+     *
+     * @param size         the size in bytes
+     * @param lastModified the modification time in milliseconds
+     * @return the attributes
+     */
+    public static FileAttributes file(long size, long lastModified) {
+        return new FileAttributes(true, true, false, size, lastModified);
+    }
+
+    /**
+     * Get the attributes of an existing directory.
+     *
+     * @param size         the size in bytes, as reported by the filesystem
+     * @param lastModified the modification time in milliseconds
+     * @return the attributes
+     */
+    public static FileAttributes directory(long size, long lastModified) {
+        return new FileAttributes(true, false, true, size, lastModified);
+    }
+
+    /**
+     * Get the attributes of an existing file of any kind, which may be neither a plain file nor a directory.
+     *
+     * @param file         {@code true} if it is a plain file
+     * @param directory    {@code true} if it is a directory
+     * @param size         the size in bytes
+     * @param lastModified the modification time in milliseconds
+     * @return the attributes
+     */
+    public static FileAttributes of(boolean file, boolean directory, long size, long lastModified) {
+        return new FileAttributes(true, file, directory, size, lastModified);
+    }
+
+    /**
+     * Determine whether the file exists.
+     *
+     * @return {@code true} if it exists
+     */
+    public boolean exists() {
+        return exists;
+    }
+
+    /**
+     * Determine whether the file is a plain file.
+     *
+     * @return {@code true} if it exists and is a plain file
+     */
+    public boolean isFile() {
+        return file;
+    }
+
+    /**
+     * Determine whether the file is a directory.
+     *
+     * @return {@code true} if it exists and is a directory
+     */
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get the size of the file.
+     *
+     * @return the size in bytes, or 0 if the file does not exist
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the modification time of the file.
+     *
+     * @return the modification time in milliseconds, or 0 if the file does not exist
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String toString() {
+        if (!exists) {
+            return "FileAttributes[non-existent]";
+        }
+        return "FileAttributes[" + (file ? "file" : directory ? "directory" : "other") + ", size=" + size + ", lastModified=" + lastModified + "]";
+    }
+}
@@ -86,6 +86,7 @@ public final class TempDir implements Closeable {
                 VFSUtils.copyStream(sourceData, fos);
                 fos.close();
                 sourceData.close();
+                VFSMetrics.addTempFileBytes(tempFile.length());
                 ok = true;
                 return tempFile;
             } finally {
@@ -22,14 +22,15 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -37,11 +38,21 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.jboss.vfs.spi.AssemblyFileSystem;
 import org.jboss.vfs.spi.FileSystem;
+import org.jboss.vfs.spi.FileSystemMetrics;
 import org.jboss.vfs.spi.JavaZipFileSystem;
+import org.jboss.vfs.spi.MeteredFileSystem;
 import org.jboss.vfs.spi.MountHandle;
 import org.jboss.vfs.spi.RealFileSystem;
 import org.jboss.vfs.spi.RootFileSystem;
@@ -56,7 +67,12 @@ import org.jboss.vfs.spi.RootFileSystem;
  * @version $Revision: 1.1 $
  */
 public class VFS {
-    private static final ConcurrentMap<VirtualFile, Map<String, Mount>> mounts = new ConcurrentHashMap<VirtualFile, Map<String, Mount>>();
+    // the mounts of each directory which has any, keyed by the directory and then by the mount point name
+    private static final ConcurrentMap<VirtualFile, ConcurrentMap<String, Mount>> mounts = new ConcurrentHashMap<VirtualFile, ConcurrentMap<String, Mount>>();
+    // incremented after every change to the mount table; resolved mounts cached on virtual files are only valid for the generation they were resolved in
+    private static final AtomicLong mountGeneration = new AtomicLong();
+    // held for every change to the mount table, so that a set of mounts is checked and added as one
+    private static final Lock mountLock = new ReentrantLock();
     private static final VirtualFile rootVirtualFile = new VirtualFile("/", null);
 
     // Note that rootVirtualFile is ignored by RootFS
@@ -97,31 +113,52 @@ public class VFS {
      * @throws IOException if an I/O error occurs, such as a filesystem already being mounted at the given mount point
      */
     public static Closeable mount(VirtualFile mountPoint, FileSystem fileSystem) throws IOException {
-        final VirtualFile parent = mountPoint.getParent();
-        if (parent == null) {
-            throw VFSMessages.MESSAGES.rootFileSystemAlreadyMounted();
+        return mountAll(new VirtualFile[] {mountPoint}, new FileSystem[] {fileSystem})[0];
+    }
+
+    /**
+     * Mount filesystems on mount points, all or none.  Every mount point is checked before any mount is added, and the
+     * mounts are added under the mount lock, so no mount is ever added and then taken away again because another could
+     * not be.  The file systems are not closed on failure.
+     *
+     * @param mountPoints the mount points
+     * @param fileSystems the file systems to mount, in the order of the mount points
+     * @return the mounts
+     * @throws IOException if any mount point is the root or already has a filesystem mounted
+     */
+    private static Mount[] mountAll(VirtualFile[] mountPoints, FileSystem[] fileSystems) throws IOException {
+        final int size = mountPoints.length;
+        final FileSystemMetrics[] metrics = new FileSystemMetrics[size];
+        final Mount[] newMounts = new Mount[size];
+        for (int i = 0; i < size; i++) {
+            if (mountPoints[i].getParent() == null) {
+                throw VFSMessages.MESSAGES.rootFileSystemAlreadyMounted();
+            }
         }
-        final String name = mountPoint.getName();
-        final Mount mount = new Mount(fileSystem, mountPoint);
-        final ConcurrentMap<VirtualFile, Map<String, Mount>> mounts = VFS.mounts;
-        for (; ; ) {
-            Map<String, Mount> childMountMap = mounts.get(parent);
-            Map<String, Mount> newMap;
-            if (childMountMap == null) {
-                childMountMap = mounts.putIfAbsent(parent, Collections.singletonMap(name, mount));
-                if (childMountMap == null) {
-                    return mount;
+        mountLock.lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                final Map<String, Mount> childMounts = mounts.get(mountPoints[i].getParent());
+                if (childMounts != null && childMounts.containsKey(mountPoints[i].getName())) {
+                    throw VFSMessages.MESSAGES.fileSystemAlreadyMountedAtMountPoint(mountPoints[i]);
                 }
             }
-            newMap = new HashMap<String, Mount>(childMountMap);
-            if (newMap.put(name, mount) != null) {
-                throw VFSMessages.MESSAGES.fileSystemAlreadyMountedAtMountPoint(mountPoint);
+            for (int i = 0; i < size; i++) {
+                metrics[i] = VFSMetrics.isEnabled() ? new FileSystemMetrics() : null;
+                newMounts[i] = new Mount(metrics[i] == null ? fileSystems[i] : new MeteredFileSystem(fileSystems[i], metrics[i]), mountPoints[i]);
+                mounts.computeIfAbsent(mountPoints[i].getParent(), key -> new ConcurrentHashMap<String, Mount>(4)).put(mountPoints[i].getName(), newMounts[i]);
             }
-            if (mounts.replace(parent, childMountMap, newMap)) {
-                VFSLogger.ROOT_LOGGER.tracef("Mounted filesystem %s on mount point %s", fileSystem, mountPoint);
-                return mount;
+            mountGeneration.incrementAndGet();
+        } finally {
+            mountLock.unlock();
+        }
+        for (int i = 0; i < size; i++) {
+            if (metrics[i] != null) {
+                VFSMetrics.register(mountPoints[i], metrics[i]);
             }
+            VFSLogger.ROOT_LOGGER.tracef("Mounted filesystem %s on mount point %s", fileSystems[i], mountPoints[i]);
         }
+        return newMounts;
     }
 
     /**
@@ -254,23 +291,53 @@ public class VFS {
     }
 
     static Mount getMount(VirtualFile virtualFile) {
-        final ConcurrentMap<VirtualFile, Map<String, Mount>> mounts = VFS.mounts;
+        // read the generation first, so that a mount table change made during the walk invalidates what we cache
+        final long generation = mountGeneration.get();
+        final ConcurrentMap<VirtualFile, ConcurrentMap<String, Mount>> mounts = VFS.mounts;
+        VirtualFile current = virtualFile;
+        Mount mount;
         for (; ; ) {
-            final VirtualFile parent = virtualFile.getParent();
+            final CachedMount cached = current.getCachedMount();
+            mount = cached == null || cached.generation != generation ? null : cached.mount.get();
+            if (mount != null) {
+                if (current == virtualFile) {
+                    return mount;
+                }
+                break;
+            }
+            final VirtualFile parent = current.getParent();
             if (parent == null) {
-                return rootMount;
+                mount = rootMount;
+                break;
             }
             final Map<String, Mount> parentMounts = mounts.get(parent);
-            if (parentMounts == null) {
-                virtualFile = parent;
-            } else {
-                final Mount mount = parentMounts.get(virtualFile.getName());
-                if (mount == null) {
-                    virtualFile = parent;
-                } else {
-                    return mount;
-                }
+            mount = parentMounts == null ? null : parentMounts.get(current.getName());
+            if (mount != null) {
+                break;
             }
+            current = parent;
+        }
+        // every file passed on the way up resolves to the same mount
+        final CachedMount cached = new CachedMount(mount, generation);
+        for (VirtualFile file = virtualFile; file != current; file = file.getParent()) {
+            file.setCachedMount(cached);
+        }
+        current.setCachedMount(cached);
+        return mount;
+    }
+
+    /**
+     * The result of a mount lookup, as cached on a {@link VirtualFile}.  The mount is only weakly held, so that a file
+     * which outlives its mount does not keep the closed filesystem reachable; the mount table holds it strongly for as
+     * long as it is current.
+     */
+    static final class CachedMount {
+        private final WeakReference<Mount> mount;
+        private final long generation;
+
+        CachedMount(Mount mount, long generation) {
+            this.mount = new WeakReference<Mount>(mount);
+            this.generation = generation;
         }
     }
 
@@ -281,7 +348,6 @@ public class VFS {
      * @return the collection of present mount (simple) names
      */
     static Set<String> getSubmounts(VirtualFile virtualFile) {
-        final ConcurrentMap<VirtualFile, Map<String, Mount>> mounts = VFS.mounts;
         final Map<String, Mount> mountMap = mounts.get(virtualFile);
         if (mountMap == null) {
             return emptyRemovableSet();
@@ -313,12 +379,16 @@ public class VFS {
      * @throws IOException if an error occurs
      */
     public static Closeable mountZip(File zipFile, VirtualFile mountPoint, TempFileProvider tempFileProvider) throws IOException {
+        return doMount(createZipFileSystem(zipFile, tempFileProvider), mountPoint);
+    }
+
+    private static JavaZipFileSystem createZipFileSystem(File zipFile, TempFileProvider tempFileProvider) throws IOException {
         boolean ok = false;
         final TempDir tempDir = tempFileProvider.createTempDir(zipFile.getName());
         try {
-            final MountHandle handle = doMount(new JavaZipFileSystem(zipFile, tempDir), mountPoint);
+            final JavaZipFileSystem fileSystem = new JavaZipFileSystem(zipFile, tempDir);
             ok = true;
-            return handle;
+            return fileSystem;
         } finally {
             if (!ok) {
                 VFSUtils.safeClose(tempDir);
@@ -326,6 +396,105 @@ public class VFS {
         }
     }
 
+    /**
+     * Create and mount several zip files into the filesystem, returning a single handle which will unmount and close
+     * all of them when closed.  The archives are opened and indexed in parallel on the given executor; once every one
+     * of them has been indexed, they are all mounted in one go.  If any archive cannot be opened or mounted, none of
+     * them is mounted.
+     * <p/>
+     * The mounts are checked and added under the lock which guards every change to the mount table, so no other mount
+     * or unmount can come between them, and none is added and then taken away again.  Lookups do not take the lock,
+     * though, so a lookup made while the mounts are being added may see some of them and not yet the others.
+     * <p/>
+     * While it waits, the calling thread indexes any archive which no thread of the executor has started on, so the
+     * caller may itself be a thread of the executor, even a single-threaded or saturated one.
+     *
+     * @param zipFiles         the zip files to mount, keyed by the point at which each should be mounted
+     * @param tempFileProvider the temporary file provider
+     * @param executor         the executor on which to index archives, or {@code null} to index them on the calling
+     *                         thread
+     * @return a handle
+     * @throws IOException if an error occurs; the exceptions of any further failures are attached as suppressed
+     */
+    public static Closeable mountZips(Map<VirtualFile, File> zipFiles, TempFileProvider tempFileProvider, Executor executor) throws IOException {
+        final int size = zipFiles.size();
+        final VirtualFile[] mountPoints = new VirtualFile[size];
+        final List<FutureTask<JavaZipFileSystem>> tasks = new ArrayList<FutureTask<JavaZipFileSystem>>(size);
+        for (Map.Entry<VirtualFile, File> entry : zipFiles.entrySet()) {
+            final File zipFile = entry.getValue();
+            mountPoints[tasks.size()] = entry.getKey();
+            final FutureTask<JavaZipFileSystem> task = new FutureTask<JavaZipFileSystem>(() -> createZipFileSystem(zipFile, tempFileProvider));
+            tasks.add(task);
+            if (executor == null) {
+                task.run();
+            } else {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    task.run();
+                }
+            }
+        }
+        // wait for every task, even after a failure, so that nothing is left open behind our back
+        final JavaZipFileSystem[] fileSystems = new JavaZipFileSystem[size];
+        IOException failure = null;
+        for (int i = 0; i < size; i++) {
+            // run the task here if it has not been started, rather than wait for a thread which may never come
+            tasks.get(i).run();
+            try {
+                fileSystems[i] = getUninterruptibly(tasks.get(i));
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                final IOException ioe = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                if (failure == null) {
+                    failure = ioe;
+                } else {
+                    failure.addSuppressed(ioe);
+                }
+            }
+        }
+        if (failure != null) {
+            for (JavaZipFileSystem fileSystem : fileSystems) {
+                VFSUtils.safeClose(fileSystem);
+            }
+            throw failure;
+        }
+        final Mount[] newMounts;
+        boolean ok = false;
+        try {
+            newMounts = mountAll(mountPoints, fileSystems);
+            ok = true;
+        } finally {
+            if (!ok) {
+                for (JavaZipFileSystem fileSystem : fileSystems) {
+                    VFSUtils.safeClose(fileSystem);
+                }
+            }
+        }
+        final List<Closeable> handles = new ArrayList<Closeable>(size);
+        for (int i = 0; i < size; i++) {
+            handles.add(new BasicMountHandle(fileSystems[i], newMounts[i]));
+        }
+        return () -> VFSUtils.safeClose(handles);
+    }
+
+    private static <T> T getUninterruptibly(Future<T> future) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
      * Create and mount a zip file into the filesystem, returning a single handle which will unmount and close the file
      * system when closed.
@@ -366,7 +535,33 @@ public class VFS {
      * @throws IOException if an error occurs
      */
     public static Closeable mountZip(VirtualFile zipFile, VirtualFile mountPoint, TempFileProvider tempFileProvider) throws IOException {
-        return mountZip(zipFile.openStream(), zipFile.getName(), mountPoint, tempFileProvider);
+        final Closeable handle = mountNestedZip(zipFile, mountPoint, tempFileProvider);
+        return handle != null ? handle : mountZip(zipFile.openStream(), zipFile.getName(), mountPoint, tempFileProvider);
+    }
+
+    /**
+     * Create and mount a zip file which is an entry of a mounted zip archive, reading it in place within that archive
+     * rather than copying it out first.  This is possible for an entry stored without compression, or a compressed entry
+     * small enough to be inflated into memory; see {@link JavaZipFileSystem#openNestedArchive(VirtualFile, VirtualFile,
+     * TempFileProvider)}.
+     *
+     * @param zipFile          a zip file in the VFS
+     * @param mountPoint       the point at which the filesystem should be mounted
+     * @param tempFileProvider the temporary file provider
+     * @return a handle, or {@code null} if the zip file cannot be read in place
+     * @throws IOException if an error occurs
+     */
+    public static Closeable mountNestedZip(VirtualFile zipFile, VirtualFile mountPoint, TempFileProvider tempFileProvider) throws IOException {
+        final Mount mount = getMount(zipFile);
+        FileSystem fileSystem = mount.getFileSystem();
+        if (fileSystem instanceof MeteredFileSystem) {
+            fileSystem = ((MeteredFileSystem) fileSystem).getDelegate();
+        }
+        if (!(fileSystem instanceof JavaZipFileSystem)) {
+            return null;
+        }
+        final JavaZipFileSystem nested = ((JavaZipFileSystem) fileSystem).openNestedArchive(mount.getMountPoint(), zipFile, tempFileProvider);
+        return nested == null ? null : doMount(nested, mountPoint);
     }
 
     /**
@@ -382,6 +577,21 @@ public class VFS {
         return doMount(new RealFileSystem(realRoot), mountPoint);
     }
 
+    /**
+     * Create and mount a real file system, returning a single handle which will unmount and close the filesystem when
+     * closed.  A caching filesystem keeps directory listings and file attributes in memory, and watches the real tree to
+     * keep them current; see {@link VirtualFile#invalidate()} for platforms where watching is unreliable.
+     *
+     * @param realRoot   the real filesystem root
+     * @param mountPoint the point at which the filesystem should be mounted
+     * @param cached     {@code true} to cache directory listings and file attributes
+     * @return a handle
+     * @throws IOException if an error occurs
+     */
+    public static Closeable mountReal(File realRoot, VirtualFile mountPoint, boolean cached) throws IOException {
+        return doMount(new RealFileSystem(realRoot, true, cached), mountPoint);
+    }
+
     /**
      * Create and mount a temporary file system, returning a single handle which will unmount and close the filesystem
      * when closed.
@@ -416,11 +626,27 @@ public class VFS {
      * @throws IOException if an error occurs
      */
     public static Closeable mountZipExpanded(File zipFile, VirtualFile mountPoint, TempFileProvider tempFileProvider) throws IOException {
+        return mountZipExpanded(zipFile, mountPoint, tempFileProvider, null);
+    }
+
+    /**
+     * Create and mount an expanded zip file in a temporary file system, returning a single handle which will unmount and
+     * close the filesystem when closed.  The entries are extracted in parallel on the given executor.
+     *
+     * @param zipFile          the zip file to mount
+     * @param mountPoint       the point at which the filesystem should be mounted
+     * @param tempFileProvider the temporary file provider
+     * @param executor         the executor on which to extract entries, or {@code null} to extract on the calling thread
+     * @return a handle
+     * @throws IOException if an error occurs
+     * @see VFSUtils#unzip(File, File, Executor)
+     */
+    public static Closeable mountZipExpanded(File zipFile, VirtualFile mountPoint, TempFileProvider tempFileProvider, Executor executor) throws IOException {
         boolean ok = false;
         final TempDir tempDir = tempFileProvider.createTempDir(zipFile.getName());
         try {
             final File rootFile = tempDir.getRoot();
-            VFSUtils.unzip(zipFile, rootFile);
+            unzip(zipFile, rootFile, executor);
             final MountHandle handle = doMount(new RealFileSystem(rootFile), mountPoint, tempDir);
             ok = true;
             return handle;
@@ -431,6 +657,14 @@ public class VFS {
         }
     }
 
+    private static void unzip(File zipFile, File rootFile, Executor executor) throws IOException {
+        if (executor == null) {
+            VFSUtils.unzip(zipFile, rootFile);
+        } else {
+            VFSUtils.unzip(zipFile, rootFile, executor);
+        }
+    }
+
     /**
      * Create and mount an expanded zip file in a temporary file system, returning a single handle which will unmount and
      * close the filesystem when closed.  The given zip data stream is closed.
@@ -443,6 +677,23 @@ public class VFS {
      * @throws IOException if an error occurs
      */
     public static Closeable mountZipExpanded(InputStream zipData, String zipName, VirtualFile mountPoint, TempFileProvider tempFileProvider) throws IOException {
+        return mountZipExpanded(zipData, zipName, mountPoint, tempFileProvider, null);
+    }
+
+    /**
+     * Create and mount an expanded zip file in a temporary file system, returning a single handle which will unmount and
+     * close the filesystem when closed.  The given zip data stream is closed.  The entries are extracted in parallel on
+     * the given executor.
+     *
+     * @param zipData          an input stream containing the zip data
+     * @param zipName          the name of the archive
+     * @param mountPoint       the point at which the filesystem should be mounted
+     * @param tempFileProvider the temporary file provider
+     * @param executor         the executor on which to extract entries, or {@code null} to extract on the calling thread
+     * @return a handle
+     * @throws IOException if an error occurs
+     */
+    public static Closeable mountZipExpanded(InputStream zipData, String zipName, VirtualFile mountPoint, TempFileProvider tempFileProvider, Executor executor) throws IOException {
         try {
             boolean ok = false;
             final TempDir tempDir = tempFileProvider.createTempDir(zipName);
@@ -460,7 +711,7 @@ public class VFS {
                         VFSUtils.safeClose(os);
                     }
                     final File rootFile = tempDir.getRoot();
-                    VFSUtils.unzip(zipFile, rootFile);
+                    unzip(zipFile, rootFile, executor);
                     final MountHandle handle = doMount(new RealFileSystem(rootFile), mountPoint, tempDir);
                     ok = true;
                     return handle;
@@ -492,6 +743,21 @@ public class VFS {
         return mountZipExpanded(zipFile.openStream(), zipFile.getName(), mountPoint, tempFileProvider);
     }
 
+    /**
+     * Create and mount an expanded zip file in a temporary file system, returning a single handle which will unmount and
+     * close the filesystem when closed.  The entries are extracted in parallel on the given executor.
+     *
+     * @param zipFile          a zip file in the VFS
+     * @param mountPoint       the point at which the filesystem should be mounted
+     * @param tempFileProvider the temporary file provider
+     * @param executor         the executor on which to extract entries, or {@code null} to extract on the calling thread
+     * @return a handle
+     * @throws IOException if an error occurs
+     */
+    public static Closeable mountZipExpanded(VirtualFile zipFile, VirtualFile mountPoint, TempFileProvider tempFileProvider, Executor executor) throws IOException {
+        return mountZipExpanded(zipFile.openStream(), zipFile.getName(), mountPoint, tempFileProvider, executor);
+    }
+
     /**
      * Create and mount an assembly file system, returning a single handle which will unmount and
      * close the filesystem when closed.
@@ -557,45 +823,25 @@ public class VFS {
             if (closed.getAndSet(true)) {
                 return;
             }
+            if (fileSystem instanceof MeteredFileSystem) {
+                VFSMetrics.unregister(mountPoint, ((MeteredFileSystem) fileSystem).getMetrics());
+            }
             final String name = mountPoint.getName();
-            final VirtualFile parent = mountPoint.getParent();
-            final ConcurrentMap<VirtualFile, Map<String, Mount>> mounts = VFS.mounts;
-            for (; ; ) {
-                final Map<String, Mount> parentMounts = mounts.get(parent);
-                if (parentMounts == null) {
-                    return;
-                }
-                final VFS.Mount mount = parentMounts.get(name);
-                if (mount != this) {
-                    return;
-                }
-                final Map<String, Mount> newParentMounts;
-                if (parentMounts.size() == 2) {
-                    final Iterator<Map.Entry<String, Mount>> ei = parentMounts.entrySet().iterator();
-                    final Map.Entry<String, Mount> e1 = ei.next();
-                    if (e1.getKey().equals(name)) {
-                        final Map.Entry<String, Mount> e2 = ei.next();
-                        newParentMounts = Collections.singletonMap(e2.getKey(), e2.getValue());
-                    } else {
-                        newParentMounts = Collections.singletonMap(e1.getKey(), e1.getValue());
-                    }
-                    if (mounts.replace(parent, parentMounts, newParentMounts)) {
-                        VFSLogger.ROOT_LOGGER.tracef("Unmounted filesystem %s on mount point %s", fileSystem, mountPoint);
-                        return;
-                    }
-                } else if (parentMounts.size() == 1) {
-                    if (mounts.remove(parent, parentMounts)) {
-                        VFSLogger.ROOT_LOGGER.tracef("Unmounted filesystem %s on mount point %s", fileSystem, mountPoint);
-                        return;
-                    }
-                } else {
-                    newParentMounts = new HashMap<String, Mount>(parentMounts);
-                    newParentMounts.remove(name);
-                    if (mounts.replace(parent, parentMounts, newParentMounts)) {
-                        VFSLogger.ROOT_LOGGER.tracef("Unmounted filesystem %s on mount point %s", fileSystem, mountPoint);
-                        return;
-                    }
+            final boolean[] removed = new boolean[1];
+            mountLock.lock();
+            try {
+                mounts.computeIfPresent(mountPoint.getParent(), (key, childMounts) -> {
+                    removed[0] = childMounts.remove(name, this);
+                    return childMounts.isEmpty() ? null : childMounts;
+                });
+                if (removed[0]) {
+                    mountGeneration.incrementAndGet();
                 }
+            } finally {
+                mountLock.unlock();
+            }
+            if (removed[0]) {
+                VFSLogger.ROOT_LOGGER.tracef("Unmounted filesystem %s on mount point %s", fileSystem, mountPoint);
             }
         }
 
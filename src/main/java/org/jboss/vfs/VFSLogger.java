@@ -30,4 +30,8 @@ public interface VFSLogger extends BasicLogger {
     @Message(id = 2, value = "Failed to clean existing content for temp file provider of type %s. Enable DEBUG level log to find what caused this")
     void failedToCleanExistingContentForTempFileProvider(String providerType);
 
+    @LogMessage(level = WARN)
+    @Message(id = 3, value = "Failed to register the VFS metrics MBean %s")
+    void failedToRegisterMetricsMBean(String objectName, @Cause Throwable cause);
+
 }
@@ -88,4 +88,7 @@ public interface VFSMessages {
 
     @Message(id = 32, value = ".. on root path")
     IllegalStateException onRootPath();
+
+    @Message(id = 33, value = "File is too large to be read into a buffer: %s")
+    IOException fileTooLarge(String path);
 }
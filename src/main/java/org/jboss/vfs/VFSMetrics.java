@@ -0,0 +1,217 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs;
+
+import java.lang.management.ManagementFactory;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.jboss.vfs.spi.FileSystemMetrics;
+import org.jboss.vfs.spi.FileSystemMetrics.OperationStatistics;
+import org.jboss.vfs.spi.MeteredFileSystem;
+
+/**
+ * Operation metrics for the VFS.  Metrics are disabled unless the {@value #ENABLED_KEY} system property is {@code true}
+ * when this class is initialized.
+ * <p/>
+ * While enabled, every filesystem mounted with {@link VFS#mount(VirtualFile, org.jboss.vfs.spi.FileSystem)} is wrapped
+ * in a {@link MeteredFileSystem}, which counts the calls made to it and records how long they take, and a {@link
+ * VFSMetricsMXBean} is registered with the platform MBean server.  While disabled, filesystems are mounted as they are,
+ * and the byte counters are not updated.
+ */
+public final class VFSMetrics {
+
+    /**
+     * The system property which enables metrics.
+     */
+    public static final String ENABLED_KEY = "jboss.vfs.metrics";
+
+    /**
+     * The object name of the metrics MBean.
+     */
+    public static final String OBJECT_NAME = "jboss.vfs:type=Metrics";
+
+    private static final boolean ENABLED;
+    private static final ConcurrentMap<VirtualFile, FileSystemMetrics> mountMetrics = new ConcurrentHashMap<VirtualFile, FileSystemMetrics>();
+    private static final LongAdder extractedBytes = new LongAdder();
+    private static final LongAdder tempFileBytes = new LongAdder();
+
+    static {
+        ENABLED = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+            public Boolean run() {
+                return Boolean.valueOf(Boolean.getBoolean(ENABLED_KEY));
+            }
+        }).booleanValue();
+        if (ENABLED) {
+            AccessController.doPrivileged(new PrivilegedAction<Void>() {
+                public Void run() {
+                    try {
+                        ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+                    } catch (JMException e) {
+                        VFSLogger.ROOT_LOGGER.failedToRegisterMetricsMBean(OBJECT_NAME, e);
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    private VFSMetrics() {
+    }
+
+    /**
+     * Determine whether metrics are enabled.
+     *
+     * @return {@code true} if they are enabled
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Get the statistics of every metered filesystem which is currently mounted.
+     *
+     * @return the statistics of each operation which has been called, keyed by mount point path name and then by method
+     *         name
+     */
+    public static Map<String, Map<String, OperationStatistics>> getMountStatistics() {
+        final Map<String, Map<String, OperationStatistics>> result = new TreeMap<String, Map<String, OperationStatistics>>();
+        for (Map.Entry<VirtualFile, FileSystemMetrics> entry : mountMetrics.entrySet()) {
+            result.put(entry.getKey().getPathName(), entry.getValue().getStatistics());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Get the mount points of the metered filesystems which are currently mounted.
+     *
+     * @return the sorted mount point path names
+     */
+    public static String[] getMountPointNames() {
+        final Set<String> names = new TreeSet<String>();
+        for (VirtualFile mountPoint : mountMetrics.keySet()) {
+            names.add(mountPoint.getPathName());
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Get the metrics of the metered filesystem mounted at a mount point.
+     *
+     * @param mountPoint the mount point
+     * @return the metrics, or {@code null} if no metered filesystem is mounted there
+     */
+    public static FileSystemMetrics getMountMetrics(VirtualFile mountPoint) {
+        return mountMetrics.get(mountPoint);
+    }
+
+    /**
+     * Get the number of bytes extracted from archives to real files.
+     *
+     * @return the number of bytes
+     */
+    public static long getExtractedBytes() {
+        return extractedBytes.sum();
+    }
+
+    /**
+     * Get the number of bytes written to temporary files, including extracted archive entries.
+     *
+     * @return the number of bytes
+     */
+    public static long getTempFileBytes() {
+        return tempFileBytes.sum();
+    }
+
+    /**
+     * Count bytes extracted from an archive to a real file.  This is for filesystem implementations; it does nothing if
+     * metrics are disabled.
+     *
+     * @param bytes the number of bytes
+     */
+    public static void addExtractedBytes(long bytes) {
+        if (ENABLED) {
+            extractedBytes.add(bytes);
+        }
+    }
+
+    /**
+     * Count bytes written to a temporary file.  This is for filesystem implementations; it does nothing if metrics are
+     * disabled.
+     *
+     * @param bytes the number of bytes
+     */
+    public static void addTempFileBytes(long bytes) {
+        if (ENABLED) {
+            tempFileBytes.add(bytes);
+        }
+    }
+
+    /**
+     * Reset all counters to zero.
+     */
+    public static void reset() {
+        for (FileSystemMetrics metrics : mountMetrics.values()) {
+            metrics.reset();
+        }
+        extractedBytes.reset();
+        tempFileBytes.reset();
+    }
+
+    static void register(VirtualFile mountPoint, FileSystemMetrics metrics) {
+        mountMetrics.put(mountPoint, metrics);
+    }
+
+    static void unregister(VirtualFile mountPoint, FileSystemMetrics metrics) {
+        mountMetrics.remove(mountPoint, metrics);
+    }
+
+    static final class Bean implements VFSMetricsMXBean {
+        public String[] getMountPoints() {
+            return getMountPointNames();
+        }
+
+        public Map<String, Map<String, OperationStatistics>> getMountStatistics() {
+            return VFSMetrics.getMountStatistics();
+        }
+
+        public long getExtractedBytes() {
+            return VFSMetrics.getExtractedBytes();
+        }
+
+        public long getTempFileBytes() {
+            return VFSMetrics.getTempFileBytes();
+        }
+
+        public void reset() {
+            VFSMetrics.reset();
+        }
+    }
+}
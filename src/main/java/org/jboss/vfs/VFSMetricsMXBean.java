@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs;
+
+import java.util.Map;
+
+import org.jboss.vfs.spi.FileSystemMetrics.OperationStatistics;
+
+/**
+ * The management interface of the VFS metrics, registered as {@value VFSMetrics#OBJECT_NAME} when metrics are enabled.
+ *
+ * @see VFSMetrics
+ */
+public interface VFSMetricsMXBean {
+
+    /**
+     * Get the mount points of the metered filesystems which are currently mounted.
+     *
+     * @return the mount point path names
+     */
+    String[] getMountPoints();
+
+    /**
+     * Get the statistics of every metered filesystem which is currently mounted.
+     *
+     * @return the statistics of each operation, keyed by mount point path name and then by method name
+     */
+    Map<String, Map<String, OperationStatistics>> getMountStatistics();
+
+    /**
+     * Get the number of bytes extracted from archives to real files.
+     *
+     * @return the number of bytes
+     */
+    long getExtractedBytes();
+
+    /**
+     * Get the number of bytes written to temporary files.
+     *
+     * @return the number of bytes
+     */
+    long getTempFileBytes();
+
+    /**
+     * Reset all counters to zero.
+     */
+    void reset();
+}
@@ -19,13 +19,16 @@ package org.jboss.vfs;
 
 import static org.jboss.vfs.VFSMessages.MESSAGES;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -33,18 +36,27 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -107,6 +119,15 @@ public class VFSUtils {
      */
     private static boolean forceCaseSensitive;
 
+    /**
+     * Runs tasks on the calling thread
+     */
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
     static {
         forceCaseSensitive = AccessController.doPrivileged(new PrivilegedAction<Boolean> () {
             public Boolean run() {
@@ -365,6 +386,7 @@ public class VFSUtils {
                 if (!targetChild.getPhysicalFile().mkdir()) {
                     throw MESSAGES.problemCreatingNewDirectory(targetChild);
                 }
+                targetChild.invalidate();
                 copyChildrenRecursive(child, targetChild);
             } else {
                 FileInputStream is = new FileInputStream(childFile);
@@ -440,6 +462,39 @@ public class VFSUtils {
         os.flush();
     }
 
+    /**
+     * Read the rest of an input stream without closing it.  If the size of the content is known, the bytes are read
+     * straight into a single array of that size.
+     *
+     * @param is   input stream
+     * @param size the number of bytes expected, or -1 if unknown
+     * @return the bytes read
+     * @throws IOException for any error
+     */
+    public static byte[] readAllBytes(InputStream is, long size) throws IOException {
+        if (is == null) {
+            throw MESSAGES.nullArgument("input stream");
+        }
+        if (size < 0L || size > Integer.MAX_VALUE - 8) {
+            return is.readAllBytes();
+        }
+        final byte[] bytes = new byte[(int) size];
+        final int count = is.readNBytes(bytes, 0, bytes.length);
+        if (count < bytes.length) {
+            return Arrays.copyOf(bytes, count);
+        }
+        final int next = is.read();
+        if (next == -1) {
+            return bytes;
+        }
+        // the content grew after its size was taken
+        final ByteArrayOutputStream os = new ByteArrayOutputStream(bytes.length + DEFAULT_BUFFER_SIZE);
+        os.write(bytes, 0, bytes.length);
+        os.write(next);
+        is.transferTo(os);
+        return os.toByteArray();
+    }
+
     /**
      * Write the given bytes to the given virtual file, replacing its current contents (if any) or creating a new file if
      * one does not exist.
@@ -457,6 +512,8 @@ public class VFSUtils {
             fos.close();
         } finally {
             safeClose(fos);
+            // the file and any directories made for it may be cached as missing
+            virtualFile.invalidate();
         }
     }
 
@@ -472,7 +529,11 @@ public class VFSUtils {
         final File file = virtualFile.getPhysicalFile();
         file.getParentFile().mkdirs();
         final FileOutputStream fos = new FileOutputStream(file);
-        copyStreamAndClose(is, fos);
+        try {
+            copyStreamAndClose(is, fos);
+        } finally {
+            virtualFile.invalidate();
+        }
     }
 
     /**
@@ -740,20 +801,25 @@ public class VFSUtils {
     public static void recursiveCopy(File original, VirtualFile destDir) throws IOException {
         final String name = original.getName();
         final File destFile = destDir.getChild(name).getPhysicalFile();
-        if (original.isDirectory()) {
-            destFile.mkdir();
-            for (File file : original.listFiles()) {
-                recursiveCopy(file, destFile);
-            }
-        } else {
-            final OutputStream os = new FileOutputStream(destFile);
-            try {
-                final InputStream is = new FileInputStream(original);
-                copyStreamAndClose(is, os);
-            } finally {
-                // in case the input stream open fails
-                safeClose(os);
+        try {
+            if (original.isDirectory()) {
+                destFile.mkdir();
+                for (File file : original.listFiles()) {
+                    recursiveCopy(file, destFile);
+                }
+            } else {
+                final OutputStream os = new FileOutputStream(destFile);
+                try {
+                    final InputStream is = new FileInputStream(original);
+                    copyStreamAndClose(is, os);
+                } finally {
+                    // in case the input stream open fails
+                    safeClose(os);
+                }
             }
+        } finally {
+            // the copy and anything in it may be cached as missing, even if it is incomplete
+            destDir.getChild(name).invalidate();
         }
     }
 
@@ -794,20 +860,25 @@ public class VFSUtils {
     public static void recursiveCopy(VirtualFile original, VirtualFile destDir) throws IOException {
         final String name = original.getName();
         final File destFile = destDir.getChild(name).getPhysicalFile();
-        if (original.isDirectory()) {
-            destFile.mkdir();
-            for (VirtualFile file : original.getChildren()) {
-                recursiveCopy(file, destFile);
-            }
-        } else {
-            final OutputStream os = new FileOutputStream(destFile);
-            try {
-                final InputStream is = original.openStream();
-                copyStreamAndClose(is, os);
-            } finally {
-                // in case the input stream open fails
-                safeClose(os);
+        try {
+            if (original.isDirectory()) {
+                destFile.mkdir();
+                for (VirtualFile file : original.getChildren()) {
+                    recursiveCopy(file, destFile);
+                }
+            } else {
+                final OutputStream os = new FileOutputStream(destFile);
+                try {
+                    final InputStream is = original.openStream();
+                    copyStreamAndClose(is, os);
+                } finally {
+                    // in case the input stream open fails
+                    safeClose(os);
+                }
             }
+        } finally {
+            // the copy and anything in it may be cached as missing, even if it is incomplete
+            destDir.getChild(name).invalidate();
         }
     }
 
@@ -871,53 +942,187 @@ public class VFSUtils {
      * @throws IOException if an error occurs
      */
     public static void unzip(File zipFile, File destDir) throws IOException {
+        unzip(zipFile, destDir, DIRECT_EXECUTOR);
+    }
+
+    /**
+     * Expand a zip file to a destination directory, inflating entries in parallel on the given executor.  The
+     * directory must exist.  The whole directory skeleton is created first; then each file entry is extracted by its
+     * own task, with at most one task per available processor outstanding at a time.  If several entries have the same
+     * name, only the last is extracted.  This method returns once every task has finished.  If an error occurs, the
+     * destination directory may contain a partially-extracted archive, so cleanup is up to the caller.
+     * <p/>
+     * Whenever it would otherwise wait, the calling thread runs a task which no thread of the executor has started yet,
+     * so the caller may itself be a thread of the executor, even a single-threaded or saturated one.  If the caller is
+     * interrupted while it waits for a task to finish, no more entries are extracted, and an {@link
+     * InterruptedIOException} is thrown once the tasks already running have finished.
+     *
+     * @param zipFile  the zip file
+     * @param destDir  the destination directory
+     * @param executor the executor on which to extract entries
+     * @throws IOException if an error occurs
+     */
+    public static void unzip(File zipFile, File destDir, Executor executor) throws IOException {
+        if (executor == null) {
+            throw MESSAGES.nullArgument("executor");
+        }
         final ZipFile zip = new ZipFile(zipFile);
         try {
+            // create the skeleton, and collect the files to extract
             final Set<File> createdDirs = new HashSet<File>();
+            // keyed by destination, so that the last of several entries with the same name wins, as it would in order
+            final Map<File, ZipEntry> files = new LinkedHashMap<File, ZipEntry>();
             final Enumeration<? extends ZipEntry> entries = zip.entries();
             FILES_LOOP:
             while (entries.hasMoreElements()) {
                 final ZipEntry zipEntry = entries.nextElement();
                 final String name = zipEntry.getName();
-                final List<String> tokens = PathTokenizer.getTokens(name);
-                final Iterator<String> it = tokens.iterator();
+                final PathTokenizer.Cursor cursor = PathTokenizer.cursor(name);
                 File current = destDir;
-                while (it.hasNext()) {
-                    String token = it.next();
-                    if (PathTokenizer.isCurrentToken(token) || PathTokenizer.isReverseToken(token)) {
+                while (cursor.next()) {
+                    if (cursor.isCurrentToken() || cursor.isReverseToken()) {
                         // invalid file; skip it!
                         continue FILES_LOOP;
                     }
-                    current = new File(current, token);
-                    if ((it.hasNext() || zipEntry.isDirectory()) && createdDirs.add(current)) {
+                    current = new File(current, cursor.getToken());
+                    if ((!cursor.isLast() || zipEntry.isDirectory()) && createdDirs.add(current)) {
                         current.mkdir();
                     }
                 }
                 if (!zipEntry.isDirectory()) {
-                    final InputStream is = zip.getInputStream(zipEntry);
-                    try {
-                        final FileOutputStream os = new FileOutputStream(current);
-                        try {
-                            VFSUtils.copyStream(is, os);
-                            // allow an error on close to terminate the unzip
-                            is.close();
-                            os.close();
-                        } finally {
-                            VFSUtils.safeClose(os);
+                    files.put(current, zipEntry);
+                }
+            }
+            // now fill in the files
+            final int permits = Runtime.getRuntime().availableProcessors();
+            final Semaphore semaphore = new Semaphore(permits);
+            final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+            final List<UnzipTask> tasks = new ArrayList<UnzipTask>(files.size());
+            // the first task which may not have been started
+            int pending = 0;
+            try {
+                for (Map.Entry<File, ZipEntry> entry : files.entrySet()) {
+                    if (failure.get() != null) {
+                        break;
+                    }
+                    while (!semaphore.tryAcquire()) {
+                        // every permit is taken: run a task which has not been started, or else wait for one to finish
+                        while (pending < tasks.size() && !tasks.get(pending).runIfNotStarted()) {
+                            pending++;
+                        }
+                        if (pending == tasks.size()) {
+                            semaphore.acquire();
+                            break;
                         }
-                    } finally {
-                        VFSUtils.safeClose(is);
                     }
-                    // exclude jsp files last modified time change. jasper jsp compiler Compiler.java depends on last modified time-stamp to re-compile jsp files
-                    if (!current.getName().endsWith(".jsp"))
-                        current.setLastModified(zipEntry.getTime());
+                    final UnzipTask task = new UnzipTask(zip, entry.getValue(), entry.getKey(), semaphore, failure);
+                    tasks.add(task);
+                    try {
+                        executor.execute(task);
+                    } catch (RejectedExecutionException e) {
+                        task.run();
+                    }
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, new InterruptedIOException());
+            }
+            // run the tasks which have not been started (which do nothing after a failure), and wait for the rest, as
+            // they read from the zip file which is about to be closed
+            for (; pending < tasks.size(); pending++) {
+                tasks.get(pending).runIfNotStarted();
+            }
+            semaphore.acquireUninterruptibly(permits);
+            final IOException e = failure.get();
+            if (e != null) {
+                throw e;
             }
         } finally {
             VFSUtils.safeClose(zip);
         }
     }
 
+    /**
+     * The extraction of one file entry, which is run either by the executor or by the unzipping thread, whichever
+     * starts it first.
+     */
+    private static final class UnzipTask implements Runnable {
+        private final ZipFile zip;
+        private final ZipEntry zipEntry;
+        private final File file;
+        private final Semaphore semaphore;
+        private final AtomicReference<IOException> failure;
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        UnzipTask(ZipFile zip, ZipEntry zipEntry, File file, Semaphore semaphore, AtomicReference<IOException> failure) {
+            this.zip = zip;
+            this.zipEntry = zipEntry;
+            this.file = file;
+            this.semaphore = semaphore;
+            this.failure = failure;
+        }
+
+        public void run() {
+            runIfNotStarted();
+        }
+
+        boolean runIfNotStarted() {
+            if (!started.compareAndSet(false, true)) {
+                return false;
+            }
+            try {
+                if (failure.get() == null) {
+                    unzipEntry(zip, zipEntry, file);
+                }
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, new IOException(e));
+            } finally {
+                semaphore.release();
+            }
+            return true;
+        }
+    }
+
+    private static void unzipEntry(ZipFile zip, ZipEntry zipEntry, File file) throws IOException {
+        final long size = zipEntry.getSize();
+        final InputStream is = zip.getInputStream(zipEntry);
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                if (size > 0L) {
+                    // preallocate, so the file is laid out in one go
+                    raf.setLength(size);
+                }
+                final FileChannel channel = raf.getChannel();
+                final byte[] buffer = new byte[(int) Math.max(1L, Math.min(size < 0L ? DEFAULT_BUFFER_SIZE : size, DEFAULT_BUFFER_SIZE))];
+                final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+                long position = 0L;
+                int res;
+                while ((res = is.read(buffer)) != -1) {
+                    byteBuffer.clear().limit(res);
+                    while (byteBuffer.hasRemaining()) {
+                        position += channel.write(byteBuffer, position);
+                    }
+                }
+                if (position != size) {
+                    raf.setLength(position);
+                }
+                // allow an error on close to terminate the unzip
+                is.close();
+                raf.close();
+            } finally {
+                VFSUtils.safeClose(raf);
+            }
+        } finally {
+            VFSUtils.safeClose(is);
+        }
+        // exclude jsp files last modified time change. jasper jsp compiler Compiler.java depends on last modified time-stamp to re-compile jsp files
+        if (!file.getName().endsWith(".jsp"))
+            file.setLastModified(zipEntry.getTime());
+    }
+
     /**
      * Return the mount source File for a given mount handle.
      *
@@ -21,23 +21,46 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.security.AccessController;
 import java.security.CodeSigner;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.security.cert.Certificate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.jboss.vfs.util.ConcurrentFilterVirtualFileVisitor;
 import org.jboss.vfs.util.FilterVirtualFileVisitor;
 import org.jboss.vfs.util.MatchAllVirtualFileFilter;
 import org.jboss.vfs.util.PathTokenizer;
@@ -56,21 +79,51 @@ import org.jboss.vfs.util.PathTokenizer;
 public final class VirtualFile implements Serializable {
 
     private static final long serialVersionUID = 1L;
+
+    /**
+     * The system property which makes {@link #getChild(String)}, {@link #getChildren()} and deserialization return
+     * canonical instances, as if {@link #intern()} had been called on each result.
+     */
+    public static final String INTERN_KEY = "jboss.vfs.internVirtualFiles";
+
+    private static final boolean INTERN;
+    private static final ReferenceQueue<VirtualFile> internQueue = new ReferenceQueue<VirtualFile>();
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<VirtualFile, ConcurrentMap> internedChildrenUpdater = AtomicReferenceFieldUpdater.newUpdater(VirtualFile.class, ConcurrentMap.class, "internedChildren");
+
+    static {
+        INTERN = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+            public Boolean run() {
+                return Boolean.valueOf(Boolean.getBoolean(INTERN_KEY));
+            }
+        }).booleanValue();
+    }
+
     private final String name;
-    private final String lcname;
     private final VirtualFile parent;
     private final int hashCode;
     private String pathName;
+    private transient String lcname;
+    private transient volatile VFS.CachedMount cachedMount;
+    private transient volatile boolean interned;
+    private transient volatile ConcurrentMap<String, InternedChild> internedChildren;
 
     VirtualFile(String name, VirtualFile parent) {
         this.name = name;
-        lcname = name.toLowerCase();
         this.parent = parent;
         int result = parent == null ? 1 : parent.hashCode();
         result = 31 * result + name.hashCode();
         hashCode = result;
     }
 
+    VFS.CachedMount getCachedMount() {
+        return cachedMount;
+    }
+
+    void setCachedMount(VFS.CachedMount cachedMount) {
+        this.cachedMount = cachedMount;
+    }
+
     /**
      * Get the simple VF name (X.java)
      *
@@ -87,6 +140,10 @@ public final class VirtualFile implements Serializable {
      * @deprecated should not be used anymore, as the code is case-sensitive from JBVFS-170
      */
     public String getLowerCaseName() {
+        String lcname = this.lcname;
+        if (lcname == null) {
+            this.lcname = lcname = name.toLowerCase();
+        }
         return lcname;
     }
 
@@ -108,23 +165,33 @@ public final class VirtualFile implements Serializable {
      * @throws IllegalArgumentException if the given virtual file is not a parent of this virtual file
      */
     public String getPathNameRelativeTo(VirtualFile parent) throws IllegalArgumentException {
-        final StringBuilder builder = new StringBuilder(160);
-        getPathNameRelativeTo(parent, builder);
-        return builder.toString();
-    }
-
-    private void getPathNameRelativeTo(VirtualFile parent, StringBuilder builder) {
-        if (this.parent == null) {
+        // find the ancestor and the length of the result, then fill it in from the end
+        int length = -1;
+        VirtualFile current = this;
+        if (current.parent == null) {
             throw VFSMessages.MESSAGES.parentIsNotAncestor(parent);
         }
-        if (this.equals(parent)) {
-            return;
+        while (!current.equals(parent)) {
+            length += current.name.length() + 1;
+            current = current.parent;
+            if (current == null) {
+                throw VFSMessages.MESSAGES.parentIsNotAncestor(parent);
+            }
+        }
+        if (length < 0) {
+            return "";
         }
-        if (!this.parent.equals(parent)) {
-            this.parent.getPathNameRelativeTo(parent, builder);
-            builder.append('/');
+        final char[] chars = new char[length];
+        int position = length;
+        for (VirtualFile file = this; file != current; file = file.parent) {
+            final String name = file.name;
+            position -= name.length();
+            name.getChars(0, name.length(), chars, position);
+            if (position > 0) {
+                chars[--position] = '/';
+            }
         }
-        builder.append(name);
+        return new String(chars);
     }
 
     /**
@@ -211,6 +278,26 @@ public final class VirtualFile implements Serializable {
         return mount.getFileSystem().exists(mount.getMountPoint(), this);
     }
 
+    /**
+     * Get the basic attributes of this file (existence, type, size and modification time) with a single filesystem
+     * call.
+     *
+     * @return the attributes
+     */
+    public FileAttributes getAttributes() {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new VirtualFilePermission(getPathName(), "read"));
+        }
+        final VFS.Mount mount = VFS.getMount(this);
+        if (sm != null) {
+            return AccessController.doPrivileged(
+                    (PrivilegedAction<FileAttributes>) () -> mount.getFileSystem().getAttributes(mount.getMountPoint(), this)
+            );
+        }
+        return mount.getFileSystem().getAttributes(mount.getMountPoint(), this);
+    }
+
     /**
      * Determines whether this virtual file represents a true root of a file system.
      * On UNIX, there is only one root "/". Howevever, on Windows there are an infinite
@@ -292,6 +379,109 @@ public final class VirtualFile implements Serializable {
         return mount.getFileSystem().openInputStream(mount.getMountPoint(), this);
     }
 
+    /**
+     * Get the whole contents of this file as a read-only buffer.  The buffer is allocated once, at the size the
+     * filesystem already knows; where it can, the filesystem returns a view of the contents without copying them, such
+     * as a mapping of a large real file or of an entry stored without compression in an archive file.
+     *
+     * @return a read-only buffer holding the file contents, from position 0 to its limit
+     * @throws IOException for any error accessing the file system
+     */
+    public ByteBuffer getContent() throws IOException {
+        final ByteBuffer content = readContent();
+        return content.isReadOnly() ? content : content.asReadOnlyBuffer();
+    }
+
+    /**
+     * Read the whole contents of this file into an array, which is allocated once, at the size the filesystem already
+     * knows.
+     *
+     * @return the file contents
+     * @throws IOException for any error accessing the file system
+     */
+    public byte[] readAllBytes() throws IOException {
+        final ByteBuffer content = readContent();
+        if (content.hasArray() && content.arrayOffset() == 0 && content.position() == 0 && content.limit() == content.array().length) {
+            // the buffer belongs to us
+            return content.array();
+        }
+        final byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return bytes;
+    }
+
+    private ByteBuffer readContent() throws IOException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new VirtualFilePermission(getPathName(), "read"));
+        }
+        final VFS.Mount mount = VFS.getMount(this);
+        if (sm != null) {
+            return doIoPrivileged(() -> mount.getFileSystem().getContent(mount.getMountPoint(), this));
+        }
+        return mount.getFileSystem().getContent(mount.getMountPoint(), this);
+    }
+
+    /**
+     * Open a read-only channel over the file contents, positioned at the start of the file.  The filesystem gives
+     * random access where it can; otherwise the channel is backed by a stream, and seeking backwards reads the file
+     * again from the start.
+     *
+     * @return the channel
+     * @throws IOException for any error accessing the file system
+     */
+    public SeekableByteChannel openChannel() throws IOException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new VirtualFilePermission(getPathName(), "read"));
+        }
+        final VFS.Mount mount = VFS.getMount(this);
+        if (sm != null) {
+            return doIoPrivileged(() -> mount.getFileSystem().openChannel(mount.getMountPoint(), this));
+        }
+        return mount.getFileSystem().openChannel(mount.getMountPoint(), this);
+    }
+
+    /**
+     * Read the whole contents of this file asynchronously.  The filesystem reads without blocking where it can, and
+     * otherwise on a shared, bounded pool of I/O threads, so the calling thread is never blocked on the read itself.
+     *
+     * @return a future for a buffer holding the file contents, from position 0 to its limit
+     */
+    public CompletableFuture<ByteBuffer> readAsync() {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new VirtualFilePermission(getPathName(), "read"));
+        }
+        final VFS.Mount mount = VFS.getMount(this);
+        if (sm != null) {
+            return AccessController.doPrivileged(
+                    (PrivilegedAction<CompletableFuture<ByteBuffer>>) () -> mount.getFileSystem().readAsync(mount.getMountPoint(), this)
+            );
+        }
+        return mount.getFileSystem().readAsync(mount.getMountPoint(), this);
+    }
+
+    /**
+     * Get a publisher of the contents of this file, as a sequence of read-only buffers.  Each subscriber reads the file
+     * afresh, and reads only as many buffers ahead as it has requested.
+     *
+     * @return the publisher
+     */
+    public Flow.Publisher<ByteBuffer> getContentPublisher() {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new VirtualFilePermission(getPathName(), "read"));
+        }
+        final VFS.Mount mount = VFS.getMount(this);
+        if (sm != null) {
+            return AccessController.doPrivileged(
+                    (PrivilegedAction<Flow.Publisher<ByteBuffer>>) () -> mount.getFileSystem().getContentPublisher(mount.getMountPoint(), this)
+            );
+        }
+        return mount.getFileSystem().getContentPublisher(mount.getMountPoint(), this);
+    }
+
     /**
      * Delete this virtual file
      *
@@ -311,6 +501,27 @@ public final class VirtualFile implements Serializable {
         return mount.getFileSystem().delete(mount.getMountPoint(), this);
     }
 
+    /**
+     * Drop anything the filesystem has cached for this virtual file and, if it is a directory, for its contents, so that
+     * changes made behind the filesystem's back are seen.  Filesystems which cache learn of most changes by themselves;
+     * this is for platforms where they cannot do so reliably.
+     */
+    public void invalidate() {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new VirtualFilePermission(getPathName(), "read"));
+        }
+        final VFS.Mount mount = VFS.getMount(this);
+        if (sm != null) {
+            AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
+                mount.getFileSystem().invalidate(mount.getMountPoint(), this);
+                return null;
+            });
+            return;
+        }
+        mount.getFileSystem().invalidate(mount.getMountPoint(), this);
+    }
+
     /**
      * Get a physical file for this virtual file.  Depending on the underlying file system type, this may simply return
      * an already-existing file; it may create a copy of a file; or it may reuse a preexisting copy of the file.
@@ -400,17 +611,47 @@ public final class VirtualFile implements Serializable {
         final List<String> names = mount.getFileSystem().getDirectoryEntries(mount.getMountPoint(), this);
         final List<VirtualFile> virtualFiles = new ArrayList<VirtualFile>(names.size() + submounts.size());
         for (String name : names) {
-            final VirtualFile child = new VirtualFile(name, this);
+            final VirtualFile child = newChild(name);
             virtualFiles.add(child);
             submounts.remove(name);
         }
         for (String name : submounts) {
-            final VirtualFile child = new VirtualFile(name, this);
+            final VirtualFile child = newChild(name);
             virtualFiles.add(child);
         }
         return virtualFiles;
     }
 
+    /**
+     * Get the children together with their attributes, read in one pass over the directory where the filesystem
+     * supports it.  The children are the same, and in the same order, as those returned by {@link #getChildren()};
+     * the attributes of submounted children are those of the submount.
+     *
+     * @return the map of children to their attributes
+     */
+    public Map<VirtualFile, FileAttributes> getChildrenWithAttributes() {
+        // isDirectory does the read security check
+        if (!isDirectory()) { return Collections.emptyMap(); }
+        return readChildrenWithAttributes();
+    }
+
+    private Map<VirtualFile, FileAttributes> readChildrenWithAttributes() {
+        final VFS.Mount mount = VFS.getMount(this);
+        final Set<String> submounts = VFS.getSubmounts(this);
+        final Map<String, FileAttributes> entries = mount.getFileSystem().getDirectoryEntriesWithAttributes(mount.getMountPoint(), this);
+        final Map<VirtualFile, FileAttributes> children = new LinkedHashMap<VirtualFile, FileAttributes>((entries.size() + submounts.size()) * 4 / 3 + 1);
+        for (Map.Entry<String, FileAttributes> entry : entries.entrySet()) {
+            final String name = entry.getKey();
+            final VirtualFile child = newChild(name);
+            children.put(child, submounts.remove(name) ? child.getAttributes() : entry.getValue());
+        }
+        for (String name : submounts) {
+            final VirtualFile child = newChild(name);
+            children.put(child, child.getAttributes());
+        }
+        return children;
+    }
+
     /**
      * Get the children
      *
@@ -460,6 +701,84 @@ public final class VirtualFile implements Serializable {
         return visitor.getMatched();
     }
 
+    /**
+     * Get all the children recursively, scanning subdirectories in parallel.
+     * <p/>
+     * This always uses {@link VisitorAttributes#RECURSE}.  The filter must be thread-safe.  The order of the returned
+     * list is not defined, other than that a directory precedes its own descendants.
+     *
+     * @param filter to filter the children
+     * @param pool   the pool in which to run the scan
+     * @return the children
+     * @throws IOException for any problem accessing the virtual file system
+     * @see #visitParallel(VirtualFileVisitor, ForkJoinPool)
+     */
+    public List<VirtualFile> getChildrenRecursively(VirtualFileFilter filter, ForkJoinPool pool) throws IOException {
+        // isDirectory does the read security check
+        if (!isDirectory()) { return Collections.emptyList(); }
+        if (filter == null) { filter = MatchAllVirtualFileFilter.INSTANCE; }
+        ConcurrentFilterVirtualFileVisitor visitor = new ConcurrentFilterVirtualFileVisitor(filter, VisitorAttributes.RECURSE);
+        visitParallel(visitor, pool);
+        return visitor.getMatched();
+    }
+
+    /**
+     * Lazily walk the whole tree under this file, including this file itself and hidden files.  Directories are listed
+     * only as the stream reaches them, and only the listings along the current path are held at any time.
+     *
+     * @return a stream of this file and all its descendants, in depth-first order
+     */
+    public Stream<VirtualFile> walk() {
+        final VisitorAttributes attributes = new VisitorAttributes();
+        attributes.setIncludeRoot(true);
+        attributes.setIncludeHidden(true);
+        attributes.setRecurseFilter(VisitorAttributes.RECURSE_ALL);
+        return walk(attributes);
+    }
+
+    /**
+     * Lazily walk the tree under this file according to the given visitor attributes: the root is included if {@link
+     * VisitorAttributes#isIncludeRoot()}, directories are omitted if {@link VisitorAttributes#isLeavesOnly()}, a
+     * directory is descended into if {@link VisitorAttributes#isRecurse(VirtualFile)} accepts it, and files whose name
+     * starts with a dot are skipped (and not descended into) unless {@link VisitorAttributes#isIncludeHidden()}.
+     * <p/>
+     * Directories are listed only as the stream reaches them, and only the listings along the current path are held at
+     * any time.
+     *
+     * @param attributes the visitor attributes
+     * @return a stream of the matching files, in depth-first order
+     * @throws IllegalArgumentException if the attributes are null
+     */
+    public Stream<VirtualFile> walk(VisitorAttributes attributes) {
+        if (attributes == null) {
+            throw VFSMessages.MESSAGES.nullArgument("attributes");
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new Walker(this, attributes), Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Lazily find the files under this file which are accepted by the given filter.  The filter's own attributes are
+     * used if it is a {@link VirtualFileFilterWithAttributes}; otherwise every file is walked, hidden files included, so
+     * that the files found are those of {@link #getChildrenRecursively(VirtualFileFilter)}.  Note that with the
+     * filter's own attributes, hidden files are only found if {@link VisitorAttributes#isIncludeHidden()}, whereas
+     * {@link #visit(VirtualFileVisitor)} finds them regardless.
+     *
+     * @param filter the filter, or {@code null} to match all files
+     * @return a stream of the matching files, in depth-first order
+     * @see #walk(VisitorAttributes)
+     */
+    public Stream<VirtualFile> find(VirtualFileFilter filter) {
+        if (filter == null) { filter = MatchAllVirtualFileFilter.INSTANCE; }
+        VisitorAttributes attributes = filter instanceof VirtualFileFilterWithAttributes ? ((VirtualFileFilterWithAttributes) filter).getAttributes() : null;
+        if (attributes == null) {
+            attributes = new VisitorAttributes();
+            attributes.setRecurseFilter(VisitorAttributes.RECURSE_ALL);
+            attributes.setIncludeHidden(true);
+        }
+        final VirtualFileFilter accepted = filter;
+        return walk(attributes).filter(accepted::accepts);
+    }
+
     /**
      * Visit the virtual file system
      *
@@ -472,15 +791,53 @@ public final class VirtualFile implements Serializable {
         visit(visitor, true);
     }
 
-    private void visit(VirtualFileVisitor visitor, boolean root) throws IOException {
+    /**
+     * Visit the virtual file system, fanning the scan of subdirectories (including submounts) out across the given
+     * fork/join pool.  The same files are visited as by {@link #visit(VirtualFileVisitor)}, but the visitor and its
+     * filters are called concurrently from the pool's threads and so must be thread-safe.
+     * <p/>
+     * Ordering: the root (if included) is visited first, and a directory is always visited before any of its
+     * descendants; there is no ordering between siblings or between different subtrees.  All visits have completed,
+     * and their effects are visible to the caller, when this method returns.
+     *
+     * @param visitor the visitor
+     * @param pool    the pool in which to run the visit
+     * @throws IOException              for any problem accessing the virtual file system
+     * @throws IllegalArgumentException if the visitor or pool is null
+     */
+    public void visitParallel(VirtualFileVisitor visitor, ForkJoinPool pool) throws IOException {
+        if (visitor == null) {
+            throw VFSMessages.MESSAGES.nullArgument("visitor");
+        }
+        if (pool == null) {
+            throw VFSMessages.MESSAGES.nullArgument("pool");
+        }
         final VisitorAttributes visitorAttributes = visitor.getAttributes();
-        if (root && visitorAttributes.isIncludeRoot()) { visitor.visit(this); }
+        if (visitorAttributes.isIncludeRoot()) { visitor.visit(this); }
         // isDirectory does the read security check
         if (!isDirectory()) { return; }
-        for (VirtualFile child : getChildren()) {
+        pool.invoke(new ParallelVisit(this, visitor));
+    }
+
+    private void visit(VirtualFileVisitor visitor, boolean root) throws IOException {
+        final VisitorAttributes visitorAttributes = visitor.getAttributes();
+        if (root) {
+            if (visitorAttributes.isIncludeRoot()) { visitor.visit(this); }
+            // isDirectory does the read security check
+            if (!isDirectory()) { return; }
+        } else {
+            // the directory listing of the parent has already told us this is a directory
+            final SecurityManager sm = System.getSecurityManager();
+            if (sm != null) {
+                sm.checkPermission(new VirtualFilePermission(getPathName(), "read"));
+            }
+        }
+        for (Map.Entry<VirtualFile, FileAttributes> entry : readChildrenWithAttributes().entrySet()) {
+            final VirtualFile child = entry.getKey();
+            final boolean directory = entry.getValue().isDirectory();
             // Always visit a leaf, and visit directories when leaves only is false
-            if (!child.isDirectory() || !visitorAttributes.isLeavesOnly()) { visitor.visit(child); }
-            if (child.isDirectory() && visitorAttributes.isRecurse(child)) { child.visit(visitor, false); }
+            if (!directory || !visitorAttributes.isLeavesOnly()) { visitor.visit(child); }
+            if (directory && visitorAttributes.isRecurse(child)) { child.visit(visitor, false); }
         }
     }
 
@@ -495,19 +852,82 @@ public final class VirtualFile implements Serializable {
         if (path == null) {
             throw VFSMessages.MESSAGES.nullArgument("path");
         }
-        final List<String> pathParts = PathTokenizer.getTokens(path);
+        final PathTokenizer.Cursor cursor = PathTokenizer.cursor(path);
         VirtualFile current = this;
-        for (String part : pathParts) {
-            if (PathTokenizer.isReverseToken(part)) {
+        while (cursor.next()) {
+            if (cursor.isReverseToken()) {
                 final VirtualFile parent = current.parent;
                 current = parent == null ? current : parent;
-            } else if (PathTokenizer.isCurrentToken(part) == false) {
-                current = new VirtualFile(part, current);
+            } else if (cursor.isCurrentToken() == false) {
+                current = current.newChild(cursor.getToken());
             }
         }
         return current;
     }
 
+    private VirtualFile newChild(String name) {
+        return INTERN ? intern().internChild(name, null) : new VirtualFile(name, this);
+    }
+
+    /**
+     * Get the canonical instance of this virtual file.  For any two equal virtual files, this method returns the same
+     * instance, so canonical instances can be compared by reference, and they share per-file state such as the cached
+     * mount.  Canonical instances are only weakly held by the VFS; once no longer referenced, they are discarded, and
+     * a later call will produce a new one.
+     *
+     * @return the canonical instance
+     * @see #INTERN_KEY
+     */
+    public VirtualFile intern() {
+        if (interned) {
+            return this;
+        }
+        final VirtualFile parent = this.parent;
+        if (parent == null) {
+            final VirtualFile root = VFS.getRootVirtualFile();
+            return name.equals(root.name) ? root : this;
+        }
+        return parent.intern().internChild(name, this);
+    }
+
+    @SuppressWarnings("unchecked")
+    private VirtualFile internChild(String name, VirtualFile candidate) {
+        purgeInternedChildren();
+        ConcurrentMap<String, InternedChild> children = internedChildren;
+        if (children == null) {
+            internedChildrenUpdater.compareAndSet(this, null, new ConcurrentHashMap<String, InternedChild>());
+            children = internedChildren;
+        }
+        for (;;) {
+            final InternedChild ref = children.get(name);
+            if (ref != null) {
+                final VirtualFile child = ref.get();
+                if (child != null) {
+                    return child;
+                }
+            }
+            // a candidate whose parent is already canonical can become the canonical instance itself
+            final VirtualFile child = candidate != null && candidate.parent == this ? candidate : new VirtualFile(name, this);
+            final InternedChild newRef = new InternedChild(child, this);
+            if (ref == null ? children.putIfAbsent(name, newRef) == null : children.replace(name, ref, newRef)) {
+                child.interned = true;
+                return child;
+            }
+        }
+    }
+
+    private static void purgeInternedChildren() {
+        Reference<? extends VirtualFile> reference;
+        while ((reference = internQueue.poll()) != null) {
+            final InternedChild ref = (InternedChild) reference;
+            ref.parent.internedChildren.remove(ref.name, ref);
+        }
+    }
+
+    private Object readResolve() {
+        return INTERN ? intern() : this;
+    }
+
     /**
      * Get file's current URL.  <b>Note:</b> if this VirtualFile refers to a directory <b>at the time of this
      * method invocation</b>, a trailing slash will be appended to the URL; this means that invoking
@@ -646,12 +1066,19 @@ public final class VirtualFile implements Serializable {
         if (o == this) {
             return true;
         }
-        if (o == null || hashCode != o.hashCode || !name.equals(o.name)) {
+        if (o == null || hashCode != o.hashCode || interned && o.interned) {
             return false;
         }
-        final VirtualFile parent = this.parent;
-        final VirtualFile oparent = o.parent;
-        return parent != null && parent.equals(oparent) || oparent == null;
+        VirtualFile a = this;
+        VirtualFile b = o;
+        do {
+            if (a == null || b == null || a.hashCode != b.hashCode || !a.name.equals(b.name)) {
+                return false;
+            }
+            a = a.parent;
+            b = b.parent;
+        } while (a != b);
+        return true;
     }
 
     /**
@@ -662,4 +1089,122 @@ public final class VirtualFile implements Serializable {
     public int hashCode() {
         return hashCode;
     }
+
+    /**
+     * A weak reference to a canonical child, which removes itself from its parent's table once cleared.
+     */
+    private static final class InternedChild extends WeakReference<VirtualFile> {
+        private final VirtualFile parent;
+        private final String name;
+
+        InternedChild(VirtualFile child, VirtualFile parent) {
+            super(child, internQueue);
+            this.parent = parent;
+            name = child.name;
+        }
+    }
+
+    /**
+     * A fork/join task which visits the children of a directory and forks a task per subdirectory to be recursed.
+     */
+    private static final class ParallelVisit extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final VirtualFile directory;
+        private final VirtualFileVisitor visitor;
+
+        ParallelVisit(VirtualFile directory, VirtualFileVisitor visitor) {
+            this.directory = directory;
+            this.visitor = visitor;
+        }
+
+        protected void compute() {
+            final VisitorAttributes visitorAttributes = visitor.getAttributes();
+            final List<ParallelVisit> subtasks = new ArrayList<ParallelVisit>();
+            for (Map.Entry<VirtualFile, FileAttributes> entry : directory.readChildrenWithAttributes().entrySet()) {
+                final VirtualFile child = entry.getKey();
+                final boolean isDirectory = entry.getValue().isDirectory();
+                // Always visit a leaf, and visit directories when leaves only is false
+                if (!isDirectory || !visitorAttributes.isLeavesOnly()) { visitor.visit(child); }
+                if (isDirectory && visitorAttributes.isRecurse(child)) {
+                    final SecurityManager sm = System.getSecurityManager();
+                    if (sm != null) {
+                        sm.checkPermission(new VirtualFilePermission(child.getPathName(), "read"));
+                    }
+                    subtasks.add(new ParallelVisit(child, visitor));
+                }
+            }
+            invokeAll(subtasks);
+        }
+    }
+
+    /**
+     * A depth-first iterator over a tree, which holds one iterator per directory on the current path.
+     */
+    private static final class Walker implements Iterator<VirtualFile> {
+
+        private final VisitorAttributes attributes;
+        private final Deque<Iterator<Map.Entry<VirtualFile, FileAttributes>>> stack = new ArrayDeque<Iterator<Map.Entry<VirtualFile, FileAttributes>>>();
+        private VirtualFile root;
+        private VirtualFile next;
+
+        Walker(VirtualFile root, VisitorAttributes attributes) {
+            this.root = root;
+            this.attributes = attributes;
+        }
+
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            final VirtualFile root = this.root;
+            if (root != null) {
+                this.root = null;
+                // isDirectory does the read security check
+                if (root.isDirectory()) {
+                    stack.push(root.readChildrenWithAttributes().entrySet().iterator());
+                }
+                if (attributes.isIncludeRoot()) {
+                    next = root;
+                    return true;
+                }
+            }
+            while (!stack.isEmpty()) {
+                final Iterator<Map.Entry<VirtualFile, FileAttributes>> iterator = stack.peek();
+                if (!iterator.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                final Map.Entry<VirtualFile, FileAttributes> entry = iterator.next();
+                final VirtualFile child = entry.getKey();
+                if (!attributes.isIncludeHidden() && child.getName().startsWith(".")) {
+                    continue;
+                }
+                final boolean directory = entry.getValue().isDirectory();
+                if (directory && attributes.isRecurse(child)) {
+                    final SecurityManager sm = System.getSecurityManager();
+                    if (sm != null) {
+                        sm.checkPermission(new VirtualFilePermission(child.getPathName(), "read"));
+                    }
+                    stack.push(child.readChildrenWithAttributes().entrySet().iterator());
+                }
+                // Always return a leaf, and return directories when leaves only is false
+                if (!directory || !attributes.isLeavesOnly()) {
+                    next = child;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public VirtualFile next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final VirtualFile next = this.next;
+            this.next = null;
+            return next;
+        }
+    }
 }
@@ -23,11 +23,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.security.CodeSigner;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
+import org.jboss.vfs.FileAttributes;
 import org.jboss.vfs.VFSLogger;
 import org.jboss.vfs.VirtualFile;
 import org.jboss.vfs.VirtualFileAssembly;
@@ -98,6 +105,24 @@ public class AssemblyFileSystem implements FileSystem {
         return directoryEntries;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, FileAttributes> getDirectoryEntriesWithAttributes(VirtualFile mountPoint, VirtualFile target) {
+        final VirtualFile assemblyFile = assembly.getFile(mountPoint, target);
+        final Map<String, FileAttributes> entries = new LinkedHashMap<String, FileAttributes>();
+        if (assemblyFile == null) {
+            for (String name : assembly.getChildNames(mountPoint, target)) {
+                entries.put(name, getAttributes(mountPoint, target.getChild(name)));
+            }
+        } else {
+            for (Map.Entry<VirtualFile, FileAttributes> entry : assemblyFile.getChildrenWithAttributes().entrySet()) {
+                entries.put(entry.getKey().getName(), entry.getValue());
+            }
+        }
+        return entries;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -124,6 +149,24 @@ public class AssemblyFileSystem implements FileSystem {
         return assembly.contains(mountPoint, target);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public FileAttributes getAttributes(VirtualFile mountPoint, VirtualFile target) {
+        if (mountPoint.equals(target)) { return FileAttributes.directory(0L, 0L); }
+        final VirtualFile assemblyFile = assembly.getFile(mountPoint, target);
+        if (assemblyFile != null) { return assemblyFile.getAttributes(); }
+        return assembly.contains(mountPoint, target) ? FileAttributes.directory(0L, 0L) : FileAttributes.NON_EXISTENT;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void invalidate(VirtualFile mountPoint, VirtualFile target) {
+        final VirtualFile assemblyFile = assembly.getFile(mountPoint, target);
+        if (assemblyFile != null) { assemblyFile.invalidate(); }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -138,6 +181,42 @@ public class AssemblyFileSystem implements FileSystem {
         return getExistingFile(mountPoint, target).openStream();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public ByteBuffer getContent(VirtualFile mountPoint, VirtualFile target) throws IOException {
+        return getExistingFile(mountPoint, target).getContent();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SeekableByteChannel openChannel(VirtualFile mountPoint, VirtualFile target) throws IOException {
+        return getExistingFile(mountPoint, target).openChannel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public CompletableFuture<ByteBuffer> readAsync(VirtualFile mountPoint, VirtualFile target) {
+        final VirtualFile assemblyFile = assembly.getFile(mountPoint, target);
+        if (assemblyFile == null) {
+            return CompletableFuture.failedFuture(new FileNotFoundException(target.getPathName()));
+        }
+        return assemblyFile.readAsync();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Flow.Publisher<ByteBuffer> getContentPublisher(VirtualFile mountPoint, VirtualFile target) {
+        final VirtualFile assemblyFile = assembly.getFile(mountPoint, target);
+        if (assemblyFile == null) {
+            return FileSystem.super.getContentPublisher(mountPoint, target);
+        }
+        return assemblyFile.getContentPublisher();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,262 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import org.jboss.vfs.VFSUtils;
+
+/**
+ * A publisher of the contents of a file, as a sequence of read-only buffers.  Each subscriber reads the file from its
+ * own source, one chunk per unit of demand, with at most one read outstanding at a time; nothing is read until demand
+ * is signalled.
+ */
+final class ContentPublisher implements Flow.Publisher<ByteBuffer> {
+
+    static final int CHUNK_SIZE = 16384;
+
+    /**
+     * An asynchronous source of bytes.  Reads are never concurrent, and each is issued only after the previous one has
+     * completed.
+     */
+    interface Source extends Closeable {
+
+        /**
+         * Start reading into the given buffer, calling the handler with the number of bytes read, -1 at the end of the
+         * file, or a failure.
+         *
+         * @param dst     the buffer
+         * @param handler the completion handler
+         */
+        void read(ByteBuffer dst, BiConsumer<Integer, Throwable> handler);
+    }
+
+    private final Supplier<Source> sourceFactory;
+
+    /**
+     * Create a new instance.
+     *
+     * @param sourceFactory the factory of a new source for each subscriber; the factory must not block
+     */
+    ContentPublisher(Supplier<Source> sourceFactory) {
+        this.sourceFactory = sourceFactory;
+    }
+
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        subscriber.onSubscribe(new ContentSubscription(subscriber, sourceFactory.get()));
+    }
+
+    /**
+     * Create a source which reads a stream on an executor.  The stream is opened by the first read.
+     *
+     * @param opener   the stream opener
+     * @param executor the executor for the blocking reads
+     * @return the source
+     */
+    static Source streamSource(Callable<InputStream> opener, Executor executor) {
+        return new StreamSource(opener, executor);
+    }
+
+    /**
+     * Create a source which reads an asynchronous file channel.  The channel is opened by the first read.
+     *
+     * @param opener the channel opener
+     * @return the source
+     */
+    static Source channelSource(Callable<AsynchronousFileChannel> opener) {
+        return new ChannelSource(opener);
+    }
+
+    private static final class ContentSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final Source source;
+        private final AtomicLong demand = new AtomicLong();
+        // serializes drain(); a call made while another is running is picked up by another pass of the running one
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean reading;
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private volatile Throwable pendingError;
+
+        ContentSubscription(Flow.Subscriber<? super ByteBuffer> subscriber, Source source) {
+            this.subscriber = subscriber;
+            this.source = source;
+        }
+
+        public void request(long n) {
+            if (n <= 0L) {
+                pendingError = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                long current;
+                do {
+                    current = demand.get();
+                } while (!demand.compareAndSet(current, current + n < 0L ? Long.MAX_VALUE : current + n));
+            }
+            drain();
+        }
+
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                if (done || reading) {
+                    continue;
+                }
+                final Throwable error = pendingError;
+                if (cancelled || error != null) {
+                    done = true;
+                    VFSUtils.safeClose(source);
+                    if (!cancelled) {
+                        subscriber.onError(error);
+                    }
+                } else if (demand.get() > 0L) {
+                    reading = true;
+                    final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+                    source.read(buffer, (n, failure) -> complete(buffer, n, failure));
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        private void complete(ByteBuffer buffer, Integer n, Throwable failure) {
+            if (!cancelled) {
+                if (failure != null) {
+                    done = true;
+                    VFSUtils.safeClose(source);
+                    subscriber.onError(failure);
+                } else if (n.intValue() < 0) {
+                    done = true;
+                    VFSUtils.safeClose(source);
+                    subscriber.onComplete();
+                } else if (n.intValue() > 0) {
+                    buffer.flip();
+                    if (demand.get() != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    subscriber.onNext(buffer.asReadOnlyBuffer());
+                }
+            }
+            reading = false;
+            drain();
+        }
+    }
+
+    private static final class StreamSource implements Source {
+        private final Callable<InputStream> opener;
+        private final Executor executor;
+        private InputStream stream;
+
+        StreamSource(Callable<InputStream> opener, Executor executor) {
+            this.opener = opener;
+            this.executor = executor;
+        }
+
+        public void read(ByteBuffer dst, BiConsumer<Integer, Throwable> handler) {
+            try {
+                executor.execute(() -> {
+                    final int n;
+                    try {
+                        if (stream == null) {
+                            stream = opener.call();
+                        }
+                        n = stream.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                        if (n > 0) {
+                            dst.position(dst.position() + n);
+                        }
+                    } catch (Throwable t) {
+                        handler.accept(null, t);
+                        return;
+                    }
+                    handler.accept(Integer.valueOf(n), null);
+                });
+            } catch (RejectedExecutionException e) {
+                handler.accept(null, e);
+            }
+        }
+
+        public void close() throws IOException {
+            final InputStream stream = this.stream;
+            if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+
+    private static final class ChannelSource implements Source, CompletionHandler<Integer, BiConsumer<Integer, Throwable>> {
+        private final Callable<AsynchronousFileChannel> opener;
+        private AsynchronousFileChannel channel;
+        private long position;
+
+        ChannelSource(Callable<AsynchronousFileChannel> opener) {
+            this.opener = opener;
+        }
+
+        public void read(ByteBuffer dst, BiConsumer<Integer, Throwable> handler) {
+            AsynchronousFileChannel channel = this.channel;
+            if (channel == null) {
+                try {
+                    this.channel = channel = opener.call();
+                } catch (Throwable t) {
+                    handler.accept(null, t);
+                    return;
+                }
+            }
+            channel.read(dst, position, handler, this);
+        }
+
+        public void completed(Integer result, BiConsumer<Integer, Throwable> handler) {
+            if (result.intValue() > 0) {
+                position += result.intValue();
+            }
+            handler.accept(result, null);
+        }
+
+        public void failed(Throwable exc, BiConsumer<Integer, Throwable> handler) {
+            handler.accept(null, exc);
+        }
+
+        public void close() throws IOException {
+            final AsynchronousFileChannel channel = this.channel;
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.vfs.VFSLogger;
+
+/**
+ * The watcher of real directories whose contents are cached.  A single watch service and thread are shared by every
+ * caching filesystem, so that the number of mounts is not limited by the operating system's limit on watch instances;
+ * a directory watched for several filesystems is registered once.  No more than {@link RealFileSystem#CACHE_WATCHES}
+ * directories are watched at a time, as the operating system's limit on watches is shared by every process of the user.
+ */
+final class DirectoryWatcher implements Runnable {
+
+    /**
+     * A listener for changes to watched directories.  Listeners are called on the watcher thread, and must not block.
+     */
+    interface Listener {
+
+        /**
+         * Called when something in a watched directory has changed.
+         *
+         * @param dir   the directory
+         * @param child the changed entry, or {@code null} if anything in the directory may have changed
+         */
+        void changed(Path dir, Path child);
+
+        /**
+         * Called when a directory is no longer watched, for instance because it was deleted.  Anything in it may have
+         * changed.
+         *
+         * @param dir the directory
+         */
+        void cancelled(Path dir);
+    }
+
+    private static final Lock LOCK = new ReentrantLock();
+    private static volatile DirectoryWatcher instance;
+
+    private final WatchService watchService;
+    private final ConcurrentMap<WatchKey, CopyOnWriteArrayList<Listener>> listeners = new ConcurrentHashMap<WatchKey, CopyOnWriteArrayList<Listener>>();
+    // the number of watched directories, including those being registered
+    private final AtomicInteger watches = new AtomicInteger();
+
+    private DirectoryWatcher(WatchService watchService) {
+        this.watchService = watchService;
+    }
+
+    private static DirectoryWatcher getInstance() throws IOException {
+        DirectoryWatcher instance = DirectoryWatcher.instance;
+        if (instance == null) {
+            LOCK.lock();
+            try {
+                instance = DirectoryWatcher.instance;
+                if (instance == null) {
+                    instance = new DirectoryWatcher(FileSystems.getDefault().newWatchService());
+                    final Thread thread = new Thread(instance, "vfs-watcher");
+                    thread.setDaemon(true);
+                    thread.start();
+                    DirectoryWatcher.instance = instance;
+                }
+            } finally {
+                LOCK.unlock();
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Watch a directory for a listener.
+     *
+     * @param dir      the directory
+     * @param listener the listener
+     * @return the key of the registration, or {@code null} if the directory could not be watched, or too many are
+     */
+    static WatchKey register(Path dir, Listener listener) {
+        try {
+            return getInstance().doRegister(dir, listener);
+        } catch (IOException | UnsupportedOperationException | ClosedWatchServiceException e) {
+            VFSLogger.ROOT_LOGGER.tracef(e, "Cannot watch %s", dir);
+            return null;
+        }
+    }
+
+    /**
+     * Stop watching a directory for a listener.  The directory is no longer watched once it has no listeners left.
+     *
+     * @param key      the key of the registration
+     * @param listener the listener
+     */
+    static void unregister(WatchKey key, Listener listener) {
+        final DirectoryWatcher instance = DirectoryWatcher.instance;
+        if (instance != null) {
+            instance.doUnregister(key, listener);
+        }
+    }
+
+    private WatchKey doRegister(Path dir, Listener listener) throws IOException {
+        // reserve a watch up front, and give it back if the directory turns out to be watched already
+        if (watches.incrementAndGet() > RealFileSystem.CACHE_WATCHES) {
+            watches.decrementAndGet();
+            VFSLogger.ROOT_LOGGER.tracef("Not watching %s, as %d directories are watched", dir, RealFileSystem.CACHE_WATCHES);
+            return null;
+        }
+        final WatchKey key;
+        try {
+            key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | RuntimeException e) {
+            watches.decrementAndGet();
+            throw e;
+        }
+        listeners.compute(key, (k, list) -> {
+            if (list == null) {
+                list = new CopyOnWriteArrayList<Listener>();
+            } else {
+                watches.decrementAndGet();
+            }
+            list.addIfAbsent(listener);
+            return list;
+        });
+        if (!key.isValid()) {
+            // the directory went away while it was being registered
+            doUnregister(key, listener);
+            return null;
+        }
+        return key;
+    }
+
+    private void doUnregister(WatchKey key, Listener listener) {
+        listeners.computeIfPresent(key, (k, list) -> {
+            list.remove(listener);
+            if (list.isEmpty()) {
+                k.cancel();
+                watches.decrementAndGet();
+                return null;
+            }
+            return list;
+        });
+    }
+
+    public void run() {
+        for (;;) {
+            final WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                continue;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+            final Path dir = (Path) key.watchable();
+            final List<Listener> list = listeners.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                final Path child = event.kind() == StandardWatchEventKinds.OVERFLOW ? null : dir.resolve((Path) event.context());
+                if (list != null) {
+                    for (Listener listener : list) {
+                        try {
+                            listener.changed(dir, child);
+                        } catch (RuntimeException e) {
+                            VFSLogger.ROOT_LOGGER.tracef(e, "Failed to handle change to %s", dir);
+                        }
+                    }
+                }
+            }
+            if (!key.reset()) {
+                final List<Listener> removed = listeners.remove(key);
+                if (removed != null) {
+                    watches.decrementAndGet();
+                    for (Listener listener : removed) {
+                        try {
+                            listener.cancelled(dir);
+                        } catch (RuntimeException e) {
+                            VFSLogger.ROOT_LOGGER.tracef(e, "Failed to handle change to %s", dir);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
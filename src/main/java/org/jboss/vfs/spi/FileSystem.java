@@ -24,9 +24,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.security.CodeSigner;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.jboss.vfs.FileAttributes;
+import org.jboss.vfs.VFSUtils;
 import org.jboss.vfs.VirtualFile;
 
 /**
@@ -62,6 +72,76 @@ public interface FileSystem extends Closeable {
      */
     InputStream openInputStream(VirtualFile mountPoint, VirtualFile target) throws IOException;
 
+    /**
+     * Get the whole contents of a file.  The default implementation reads {@link #openInputStream(VirtualFile,
+     * VirtualFile)} into a single array of the size given by {@link #getSize(VirtualFile, VirtualFile)}; implementations
+     * should override it where they can return the contents without copying them.  A writable buffer belongs to the
+     * caller; a buffer which is shared, or which maps a file, must be read-only.
+     *
+     * @param mountPoint the mount point of the filesystem instance (guaranteed to be a parent of {@code target})
+     * @param target     the virtual file to act upon
+     * @return a buffer holding the contents, from position 0 to its limit
+     * @throws IOException if an I/O error occurs
+     */
+    default ByteBuffer getContent(VirtualFile mountPoint, VirtualFile target) throws IOException {
+        try (InputStream is = openInputStream(mountPoint, target)) {
+            return ByteBuffer.wrap(VFSUtils.readAllBytes(is, getSize(mountPoint, target)));
+        }
+    }
+
+    /**
+     * Open a read-only channel with random access to the file at the given relative path.  The default implementation
+     * is backed by {@link #openInputStream(VirtualFile, VirtualFile)}: seeking forwards skips, and seeking backwards
+     * opens the stream again, so implementations should override it where the filesystem can read at an arbitrary
+     * position.
+     *
+     * @param mountPoint the mount point of the filesystem instance (guaranteed to be a parent of {@code target})
+     * @param target     the virtual file to act upon
+     * @return the channel
+     * @throws IOException if an I/O error occurs
+     */
+    default SeekableByteChannel openChannel(VirtualFile mountPoint, VirtualFile target) throws IOException {
+        final long size = getSize(mountPoint, target);
+        return new StreamChannel(() -> openInputStream(mountPoint, target), openInputStream(mountPoint, target), size);
+    }
+
+    /**
+     * Read the whole contents of a file asynchronously.  The default implementation calls {@link
+     * #getContent(VirtualFile, VirtualFile)} on a shared, bounded pool of I/O threads, whose size is given by the
+     * {@code jboss.vfs.async.threads} system property; implementations should override it where the filesystem can read
+     * without blocking.
+     *
+     * @param mountPoint the mount point of the filesystem instance (guaranteed to be a parent of {@code target})
+     * @param target     the virtual file to act upon
+     * @return a future for a buffer holding the contents, from position 0 to its limit
+     */
+    default CompletableFuture<ByteBuffer> readAsync(VirtualFile mountPoint, VirtualFile target) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return getContent(mountPoint, target);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, IoExecutor.get());
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Get a publisher of the contents of a file, as a sequence of read-only buffers.  Each subscriber reads the file
+     * afresh, and nothing is read until a subscriber signals demand.  The default implementation reads {@link
+     * #openInputStream(VirtualFile, VirtualFile)} on the pool used by {@link #readAsync(VirtualFile, VirtualFile)}.
+     *
+     * @param mountPoint the mount point of the filesystem instance (guaranteed to be a parent of {@code target})
+     * @param target     the virtual file to act upon
+     * @return the publisher
+     */
+    default Flow.Publisher<ByteBuffer> getContentPublisher(VirtualFile mountPoint, VirtualFile target) {
+        return new ContentPublisher(() -> ContentPublisher.streamSource(() -> openInputStream(mountPoint, target), IoExecutor.get()));
+    }
+
     /**
      * Determine whether this filesystem is read-only.  A read-only filesystem prohibits file modification or deletion.
      * It is not an error to mount a read-write filesystem within a read-only filesystem however (this operation does not
@@ -126,6 +206,33 @@ public interface FileSystem extends Closeable {
      */
     boolean isDirectory(VirtualFile mountPoint, VirtualFile target);
 
+    /**
+     * Drop any state which this filesystem has cached for a virtual file and, if it is a directory, for its contents.
+     * This is for filesystems which cache what they read and learn of changes in a way which may be slow or lossy.  The
+     * default implementation does nothing.
+     *
+     * @param mountPoint the mount point of the filesystem instance (guaranteed to be a parent of {@code target})
+     * @param target     the virtual file to act upon
+     */
+    default void invalidate(VirtualFile mountPoint, VirtualFile target) {
+    }
+
+    /**
+     * Get the basic attributes of a virtual file within this filesystem in one call.  The default implementation
+     * combines the results of the individual attribute methods; implementations should override it where all of the
+     * attributes can be had at once.
+     *
+     * @param mountPoint the mount point of the filesystem instance (guaranteed to be a parent of {@code target})
+     * @param target     the virtual file to act upon
+     * @return the attributes, or {@link FileAttributes#NON_EXISTENT} if the file does not exist
+     */
+    default FileAttributes getAttributes(VirtualFile mountPoint, VirtualFile target) {
+        if (!exists(mountPoint, target)) {
+            return FileAttributes.NON_EXISTENT;
+        }
+        return FileAttributes.of(isFile(mountPoint, target), isDirectory(mountPoint, target), getSize(mountPoint, target), getLastModified(mountPoint, target));
+    }
+
     /**
      * Read a directory.  Returns all the simple path names (excluding "." and "..").  The returned list will be empty if
      * the node is not a directory.
@@ -136,6 +243,25 @@ public interface FileSystem extends Closeable {
      */
     List<String> getDirectoryEntries(VirtualFile mountPoint, VirtualFile target);
 
+    /**
+     * Read a directory together with the attributes of each entry.  The entries are the same, and in the same order, as
+     * those returned by {@link #getDirectoryEntries(VirtualFile, VirtualFile)}.  The default implementation reads the
+     * attributes of each entry individually; implementations should override it where a directory listing can supply
+     * them directly.
+     *
+     * @param mountPoint the mount point of the filesystem instance (guaranteed to be a parent of {@code target})
+     * @param target     the virtual file to act upon
+     * @return the map of children names to their attributes
+     */
+    default Map<String, FileAttributes> getDirectoryEntriesWithAttributes(VirtualFile mountPoint, VirtualFile target) {
+        final List<String> names = getDirectoryEntries(mountPoint, target);
+        final Map<String, FileAttributes> entries = new LinkedHashMap<String, FileAttributes>(names.size() * 4 / 3 + 1);
+        for (String name : names) {
+            entries.put(name, getAttributes(mountPoint, target.getChild(name)));
+        }
+        return entries;
+    }
+
     /**
      * Get the {@link CodeSigner}s for a the virtual file.
      *
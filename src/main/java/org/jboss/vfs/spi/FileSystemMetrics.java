@@ -0,0 +1,279 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for the operations performed on one mounted filesystem.  Recording is lock-free and
+ * does not allocate, so it can be done on every call.
+ * <p/>
+ * Latencies are kept in a histogram with power-of-two nanosecond buckets: bucket {@code b} counts calls which took
+ * less than <code>2<sup>b</sup></code> but at least <code>2<sup>b-1</sup></code> nanoseconds.
+ */
+public final class FileSystemMetrics {
+
+    /**
+     * The number of histogram buckets; the last one also holds every call slower than about 9 minutes.
+     */
+    public static final int BUCKETS = 40;
+
+    /**
+     * The metered operations, one per {@link FileSystem} method.
+     */
+    public enum Operation {
+        GET_FILE("getFile"),
+        OPEN_INPUT_STREAM("openInputStream"),
+        GET_CONTENT("getContent"),
+        READ_ASYNC("readAsync"),
+        OPEN_CHANNEL("openChannel"),
+        DELETE("delete"),
+        GET_SIZE("getSize"),
+        GET_LAST_MODIFIED("getLastModified"),
+        EXISTS("exists"),
+        IS_FILE("isFile"),
+        IS_DIRECTORY("isDirectory"),
+        GET_ATTRIBUTES("getAttributes"),
+        GET_DIRECTORY_ENTRIES("getDirectoryEntries"),
+        GET_DIRECTORY_ENTRIES_WITH_ATTRIBUTES("getDirectoryEntriesWithAttributes"),
+        GET_CODE_SIGNERS("getCodeSigners");
+
+        private final String methodName;
+
+        Operation(String methodName) {
+            this.methodName = methodName;
+        }
+
+        /**
+         * Get the name of the {@link FileSystem} method for this operation.
+         *
+         * @return the method name
+         */
+        public String getMethodName() {
+            return methodName;
+        }
+    }
+
+    private final Counters[] counters;
+
+    /**
+     * Create a new instance with all counters at zero.
+     */
+    public FileSystemMetrics() {
+        final Operation[] operations = Operation.values();
+        counters = new Counters[operations.length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new Counters();
+        }
+    }
+
+    /**
+     * Record a call.
+     *
+     * @param operation  the operation
+     * @param startNanos the value of {@link System#nanoTime()} when the call started
+     * @param failed     {@code true} if the call threw an exception
+     */
+    public void record(Operation operation, long startNanos, boolean failed) {
+        final long elapsed = Math.max(0L, System.nanoTime() - startNanos);
+        final Counters c = counters[operation.ordinal()];
+        c.count.increment();
+        c.totalNanos.add(elapsed);
+        c.buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(elapsed))].increment();
+        if (failed) {
+            c.errors.increment();
+        }
+    }
+
+    /**
+     * Get a snapshot of the statistics of one operation.
+     *
+     * @param operation the operation
+     * @return the statistics
+     */
+    public OperationStatistics getStatistics(Operation operation) {
+        final Counters c = counters[operation.ordinal()];
+        final long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = c.buckets[i].sum();
+        }
+        return new OperationStatistics(operation.getMethodName(), c.count.sum(), c.errors.sum(), c.totalNanos.sum(), buckets);
+    }
+
+    /**
+     * Get a snapshot of the statistics of every operation which has been called at least once.
+     *
+     * @return the statistics, keyed by method name, in declaration order
+     */
+    public Map<String, OperationStatistics> getStatistics() {
+        final Map<String, OperationStatistics> result = new LinkedHashMap<String, OperationStatistics>();
+        for (Operation operation : Operation.values()) {
+            final OperationStatistics statistics = getStatistics(operation);
+            if (statistics.getCount() > 0L) {
+                result.put(operation.getMethodName(), statistics);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Reset every counter to zero.  Calls recorded concurrently with a reset may be partly lost.
+     */
+    public void reset() {
+        for (Counters c : counters) {
+            c.count.reset();
+            c.errors.reset();
+            c.totalNanos.reset();
+            for (LongAdder bucket : c.buckets) {
+                bucket.reset();
+            }
+        }
+    }
+
+    private static final class Counters {
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        Counters() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * A point-in-time view of the statistics of one operation.
+     */
+    public static final class OperationStatistics {
+        private final String operation;
+        private final long count;
+        private final long errors;
+        private final long totalNanos;
+        private final long[] histogram;
+
+        OperationStatistics(String operation, long count, long errors, long totalNanos, long[] histogram) {
+            this.operation = operation;
+            this.count = count;
+            this.errors = errors;
+            this.totalNanos = totalNanos;
+            this.histogram = histogram;
+        }
+
+        /**
+         * Get the name of the {@link FileSystem} method.
+         *
+         * @return the method name
+         */
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * Get the number of calls, including failed ones.
+         *
+         * @return the number of calls
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the number of calls which threw an exception.
+         *
+         * @return the number of failed calls
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Get the total time spent in calls.
+         *
+         * @return the total time in nanoseconds
+         */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * Get the mean time of a call.
+         *
+         * @return the mean time in nanoseconds, or 0 if there were no calls
+         */
+        public long getMeanNanos() {
+            return count == 0L ? 0L : totalNanos / count;
+        }
+
+        /**
+         * Get an upper bound of the median time of a call, to within a factor of two.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getMedianNanos() {
+            return getPercentileNanos(0.5);
+        }
+
+        /**
+         * Get an upper bound of the 99th percentile time of a call, to within a factor of two.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getPercentile99Nanos() {
+            return getPercentileNanos(0.99);
+        }
+
+        /**
+         * Get the latency histogram, as described in {@link FileSystemMetrics}.
+         *
+         * @return a copy of the bucket counts
+         */
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+
+        private long getPercentileNanos(double fraction) {
+            long total = 0L;
+            for (long bucket : histogram) {
+                total += bucket;
+            }
+            if (total == 0L) {
+                return 0L;
+            }
+            final long rank = (long) Math.ceil(total * fraction);
+            long seen = 0L;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank) {
+                    return 1L << i;
+                }
+            }
+            return 1L << histogram.length - 1;
+        }
+
+        public String toString() {
+            return "OperationStatistics[" + operation + ", count=" + count + ", errors=" + errors + ", meanNanos=" + getMeanNanos() + ", histogram=" + Arrays.toString(histogram) + "]";
+        }
+    }
+}
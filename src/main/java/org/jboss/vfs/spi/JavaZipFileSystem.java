@@ -19,6 +19,7 @@
 package org.jboss.vfs.spi;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
@@ -26,23 +27,44 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.AccessController;
 import java.security.CodeSigner;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.security.PrivilegedAction;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 
+import org.jboss.vfs.FileAttributes;
 import org.jboss.vfs.TempDir;
+import org.jboss.vfs.TempFileProvider;
 import org.jboss.vfs.VFSLogger;
 import org.jboss.vfs.VFSMessages;
+import org.jboss.vfs.VFSMetrics;
 import org.jboss.vfs.VFSUtils;
 import org.jboss.vfs.VirtualFile;
 import org.jboss.vfs.util.PathTokenizer;
@@ -52,18 +74,73 @@ import org.jboss.vfs.util.PathTokenizer;
  * <p/>
  * This implementation is backed by a zip file.  The provided file must be owned by this instance; otherwise, if the
  * file disappears unexpectedly, the filesystem will malfunction.
+ * <p/>
+ * The archive is indexed directly from its central directory and entries are read straight from the file.  Signed
+ * archives are additionally opened as a {@link JarFile}, so that their contents are verified when read.
+ * <p/>
+ * An archive which is itself an entry of another zip filesystem can be opened with {@link
+ * #openNestedArchive(VirtualFile, VirtualFile, TempFileProvider)}, which reads it in place instead of extracting it.
+ * <p/>
+ * An archive supplied as a stream is kept in memory if it is no larger than the threshold given by the {@value
+ * #IN_MEMORY_THRESHOLD_KEY} system property (256 KiB by default, 0 to disable), and is only written to the temp dir
+ * if something needs a real file for it, such as {@link #getMountSource()} or signature verification.
+ * <p/>
+ * If the {@value #INDEX_CACHE_DIR_KEY} system property names a directory, the indexes of archive files are kept there
+ * between runs, so that an unchanged archive is not indexed again when it is next mounted.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  * @author <a href="mailto:ales.justin@jboss.org">Ales Justin</a>
  */
 public final class JavaZipFileSystem implements FileSystem {
 
-    private final JarFile zipFile;
+    /**
+     * The system property which sets the largest size, in bytes, of a stream-supplied archive which is kept in memory.
+     */
+    public static final String IN_MEMORY_THRESHOLD_KEY = "jboss.vfs.zip.inMemoryThreshold";
+
+    /**
+     * The system property which names the directory in which archive indexes are cached.  There is no cache if unset.
+     */
+    public static final String INDEX_CACHE_DIR_KEY = "jboss.vfs.zip.indexCacheDir";
+
+    private static final int IN_MEMORY_THRESHOLD;
+    private static final ZipIndexCache INDEX_CACHE;
+    private static final int INFLATE_BUFFER_SIZE = 65536;
+    private static final int INFLATED_VIEW_LIMIT = 8388608;
+
+    static {
+        IN_MEMORY_THRESHOLD = AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+            public Integer run() {
+                return Integer.getInteger(IN_MEMORY_THRESHOLD_KEY, 262144);
+            }
+        }).intValue();
+        final String indexCacheDir = AccessController.doPrivileged(new PrivilegedAction<String>() {
+            public String run() {
+                return System.getProperty(INDEX_CACHE_DIR_KEY);
+            }
+        });
+        INDEX_CACHE = indexCacheDir == null || indexCacheDir.isEmpty() ? null : new ZipIndexCache(new File(indexCacheDir));
+    }
+
+    private final ZipSource source;
     private final File archiveFile;
+    // false while a stream-supplied archive exists only in memory
+    private volatile boolean spooled;
     private final long zipTime;
-    private final ZipNode rootNode;
+    private final ZipIndex index;
     private final TempDir tempDir;
     private final File contentsDir;
+    // guards one-time initialization; never held while an entry is extracted
+    private final Lock lock = new ReentrantLock();
+    // single-flight extraction: the first caller for an entry runs the task, and any others wait for its result
+    private final ConcurrentMap<Integer, FutureTask<File>> extractions = new ConcurrentHashMap<Integer, FutureTask<File>>();
+    // compressed entries opened as channels, by node
+    private final ConcurrentMap<Integer, SoftReference<ByteBuffer>> inflatedEntries = new ConcurrentHashMap<Integer, SoftReference<ByteBuffer>>();
+    private final boolean signed;
+    // only opened for signed archives, on first use
+    private volatile JarFile jarFile;
+    // allocated on the first extraction; most archives never have anything extracted
+    private volatile AtomicReferenceArray<File> cachedFiles;
 
     /**
      * Create a new instance.
@@ -74,7 +151,7 @@ public final class JavaZipFileSystem implements FileSystem {
      * @throws java.io.IOException if an I/O error occurs
      */
     public JavaZipFileSystem(String name, InputStream inputStream, TempDir tempDir) throws IOException {
-        this(tempDir.createFile(name, inputStream), tempDir);
+        this(tempDir.getFile(name), openSource(name, inputStream, tempDir), System.currentTimeMillis(), null, tempDir);
     }
 
     /**
@@ -85,81 +162,204 @@ public final class JavaZipFileSystem implements FileSystem {
      * @throws java.io.IOException if an I/O error occurs
      */
     public JavaZipFileSystem(File archiveFile, TempDir tempDir) throws IOException {
-        zipTime = archiveFile.lastModified();
-        final JarFile zipFile;
-        this.zipFile = zipFile = new JarFile(archiveFile);
+        this(archiveFile, ZipSource.of(archiveFile), archiveFile.lastModified(), INDEX_CACHE, tempDir);
+    }
+
+    private JavaZipFileSystem(File archiveFile, ZipSource source, long zipTime, ZipIndexCache indexCache, TempDir tempDir) throws IOException {
+        this.zipTime = zipTime;
+        this.source = source;
         this.archiveFile = archiveFile;
         this.tempDir = tempDir;
-        final Enumeration<? extends JarEntry> entries = zipFile.entries();
-        final ZipNode rootNode = new ZipNode(new HashMap<String, ZipNode>(), "", null);
-        FILES:
-        for (JarEntry entry : iter(entries)) {
-            final String name = entry.getName();
-            final boolean isDirectory = entry.isDirectory();
-            final List<String> tokens = PathTokenizer.getTokens(name);
-            ZipNode node = rootNode;
-            final Iterator<String> it = tokens.iterator();
-            while (it.hasNext()) {
-                String token = it.next();
-                if (PathTokenizer.isCurrentToken(token) || PathTokenizer.isReverseToken(token)) {
-                    // invalid file name
-                    continue FILES;
+        spooled = source.getFile() != null;
+        try {
+            index = indexCache == null ? ZipIndex.read(source) : indexCache.getIndex(archiveFile, source);
+        } catch (IOException e) {
+            VFSUtils.safeClose(source);
+            throw e;
+        }
+        signed = index.isSigned();
+        contentsDir = tempDir.getFile("contents");
+        contentsDir.mkdir();
+        VFSLogger.ROOT_LOGGER.tracef("Created zip filesystem for file %s in temp dir %s", archiveFile, tempDir);
+    }
+
+    /**
+     * Open an archive entry of this filesystem as a zip filesystem of its own, without extracting it to a temp file.  An
+     * entry stored without compression is read in place from this archive; a compressed entry no larger than the
+     * in-memory threshold is inflated into memory.  Entries of signed archives are not opened in place, as their
+     * contents must be verified.
+     *
+     * @param mountPoint       the mount point of this filesystem
+     * @param target           the archive entry
+     * @param tempFileProvider the temporary file provider for the new filesystem
+     * @return the new filesystem, or {@code null} if the entry cannot be opened in place
+     * @throws IOException if an I/O error occurs or the entry is not a valid zip archive
+     */
+    public JavaZipFileSystem openNestedArchive(VirtualFile mountPoint, VirtualFile target, TempFileProvider tempFileProvider) throws IOException {
+        final int node = index.find(mountPoint, target);
+        if (node == ZipIndex.NOT_FOUND || index.isDirectory(node) || signed || getCachedFile(node) != null) {
+            return null;
+        }
+        final long dataOffset = index.getDataOffset(source, node);
+        final ZipSource nested;
+        switch (index.getMethod(node)) {
+            case ZipEntry.STORED: {
+                nested = source.slice(dataOffset, index.getCompressedSize(node));
+                break;
+            }
+            case ZipEntry.DEFLATED: {
+                if (index.getSize(node) > IN_MEMORY_THRESHOLD) {
+                    return null;
                 }
-                final Map<String, ZipNode> children = node.children;
-                if (children == null) {
-                    // todo - log bad zip entry
-                    continue FILES;
+                nested = ZipSource.of(inflateEntry(node));
+                break;
+            }
+            default: {
+                return null;
+            }
+        }
+        boolean ok = false;
+        try {
+            final TempDir tempDir = tempFileProvider.createTempDir(target.getName());
+            try {
+                final JavaZipFileSystem fileSystem = new JavaZipFileSystem(tempDir.getFile(target.getName()), nested, index.getTime(node), null, tempDir);
+                ok = true;
+                return fileSystem;
+            } finally {
+                if (!ok) {
+                    VFSUtils.safeClose(tempDir);
                 }
-                ZipNode child = children.get(token);
-                if (child == null) {
-                    child = it.hasNext() || isDirectory ? new ZipNode(new HashMap<String, ZipNode>(), token, null) : new ZipNode(null, token, entry);
-                    children.put(token, child);
+            }
+        } finally {
+            if (!ok) {
+                VFSUtils.safeClose(nested);
+            }
+        }
+    }
+
+    /**
+     * Read an archive stream into memory if it is small enough, otherwise into a file in the temp dir.  The stream is
+     * closed.
+     */
+    private static ZipSource openSource(String name, InputStream inputStream, TempDir tempDir) throws IOException {
+        byte[] bytes = new byte[Math.min(8192, IN_MEMORY_THRESHOLD + 1)];
+        int count = 0;
+        try {
+            int res;
+            while (count <= IN_MEMORY_THRESHOLD && (res = inputStream.read(bytes, count, bytes.length - count)) != -1) {
+                count += res;
+                if (count == bytes.length && count <= IN_MEMORY_THRESHOLD) {
+                    bytes = Arrays.copyOf(bytes, Math.min(bytes.length << 1, IN_MEMORY_THRESHOLD + 1));
                 }
-                node = child;
             }
+        } catch (IOException e) {
+            VFSUtils.safeClose(inputStream);
+            throw e;
         }
-        this.rootNode = rootNode;
-        contentsDir = tempDir.getFile("contents");
-        contentsDir.mkdir();
-        VFSLogger.ROOT_LOGGER.tracef("Created zip filesystem for file %s in temp dir %s", archiveFile, tempDir);
+        if (count <= IN_MEMORY_THRESHOLD) {
+            inputStream.close();
+            return ZipSource.of(ByteBuffer.wrap(bytes, 0, count));
+        }
+        return ZipSource.of(tempDir.createFile(name, new SequenceInputStream(new ByteArrayInputStream(bytes, 0, count), inputStream)));
     }
 
     /**
-     * {@inheritDoc}
+     * Get the archive as a real file, writing it out first if it is only held in memory.
      */
-    private static <T> Iterable<T> iter(final Enumeration<T> entries) {
-        return new EnumerationIterable<T>(entries);
+    private File getArchiveFile() throws IOException {
+        if (!spooled) {
+            lock.lock();
+            try {
+                if (!spooled) {
+                    try (FileChannel out = FileChannel.open(archiveFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        source.transferTo(0L, source.size(), out);
+                    }
+                    VFSMetrics.addTempFileBytes(source.size());
+                    archiveFile.setLastModified(zipTime);
+                    spooled = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return archiveFile;
     }
 
     /**
      * {@inheritDoc}
      */
     public File getFile(VirtualFile mountPoint, VirtualFile target) throws IOException {
-        final ZipNode zipNode = getExistingZipNode(mountPoint, target);
+        final int node = getExistingNode(mountPoint, target);
         // check if we have cached one already
-        File cachedFile = zipNode.cachedFile;
+        final File cachedFile = getCachedFile(node);
         if (cachedFile != null) {
             return cachedFile;
         }
-        synchronized (zipNode) {
-            // double-check
-            cachedFile = zipNode.cachedFile;
-            if (cachedFile != null) {
-                return cachedFile;
+        final Integer key = Integer.valueOf(node);
+        FutureTask<File> task = extractions.get(key);
+        if (task == null) {
+            final FutureTask<File> newTask = new FutureTask<File>(() -> extractFile(node, target.getPathNameRelativeTo(mountPoint)));
+            task = extractions.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                try {
+                    newTask.run();
+                } finally {
+                    extractions.remove(key, newTask);
+                }
             }
+        }
+        return getUninterruptibly(task);
+    }
 
-            // nope, create a cached temp
-            final JarEntry zipEntry = zipNode.entry;
-            String name = target.getPathNameRelativeTo(mountPoint);
-            cachedFile = buildFile(contentsDir, name);
-            if (zipEntry == null) {
-                cachedFile.mkdir();
-            } else {
-                VFSUtils.copyStreamAndClose(zipFile.getInputStream(zipEntry), new BufferedOutputStream(new FileOutputStream(cachedFile)));
+    private File extractFile(int node, String name) throws IOException {
+        // double-check, in case another extraction finished just before ours was registered
+        File cachedFile = getCachedFile(node);
+        if (cachedFile != null) {
+            return cachedFile;
+        }
+
+        // nope, create a cached temp
+        cachedFile = buildFile(contentsDir, name);
+        if (index.isDirectory(node)) {
+            cachedFile.mkdir();
+        } else {
+            extract(node, cachedFile);
+            if (VFSMetrics.isEnabled()) {
+                final long length = cachedFile.length();
+                VFSMetrics.addExtractedBytes(length);
+                VFSMetrics.addTempFileBytes(length);
             }
+        }
 
-            zipNode.cachedFile = cachedFile;
-            return cachedFile;
+        getCachedFiles().set(node, cachedFile);
+        return cachedFile;
+    }
+
+    private static File getUninterruptibly(FutureTask<File> task) throws IOException {
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IOException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
@@ -167,30 +367,89 @@ public final class JavaZipFileSystem implements FileSystem {
      * {@inheritDoc}
      */
     public InputStream openInputStream(VirtualFile mountPoint, VirtualFile target) throws IOException {
-        final ZipNode zipNode = getExistingZipNode(mountPoint, target);
-        final File cachedFile = zipNode.cachedFile;
+        final int node = getExistingNode(mountPoint, target);
+        final File cachedFile = getCachedFile(node);
         if (cachedFile != null) {
             return new FileInputStream(cachedFile);
         }
-        if (rootNode == zipNode) {
-            return new FileInputStream(archiveFile);
+        if (node == ZipIndex.ROOT) {
+            return source.openStream(0L, source.size());
+        }
+        if (index.isDirectory(node)) {
+            throw VFSMessages.MESSAGES.notAFile(target.getPathName());
+        }
+        return openEntryStream(node);
+    }
+
+    /**
+     * {@inheritDoc}  The contents of an entry stored without compression are a read-only view of the archive, mapped
+     * from the archive file for large entries; a compressed entry is inflated straight into a buffer of its recorded
+     * size.  Entries of signed archives are read as streams, so that they are verified.
+     */
+    public ByteBuffer getContent(VirtualFile mountPoint, VirtualFile target) throws IOException {
+        final int node = getExistingNode(mountPoint, target);
+        if (node != ZipIndex.ROOT && !index.isDirectory(node) && !signed && getCachedFile(node) == null) {
+            if (index.getSize(node) > Integer.MAX_VALUE - 8) {
+                throw VFSMessages.MESSAGES.fileTooLarge(target.getPathName());
+            }
+            switch (index.getMethod(node)) {
+                case ZipEntry.STORED: {
+                    return source.getContent(index.getDataOffset(source, node), (int) index.getCompressedSize(node));
+                }
+                case ZipEntry.DEFLATED: {
+                    final SoftReference<ByteBuffer> ref = inflatedEntries.get(Integer.valueOf(node));
+                    final ByteBuffer inflated = ref == null ? null : ref.get();
+                    return inflated != null ? inflated.asReadOnlyBuffer() : inflateEntry(node);
+                }
+            }
         }
-        final JarEntry entry = zipNode.entry;
-        if (entry == null) {
+        return FileSystem.super.getContent(mountPoint, target);
+    }
+
+    /**
+     * {@inheritDoc}  An entry stored without compression is read in place from the archive.  A compressed entry is
+     * inflated into memory on first use and the result is kept while memory allows, unless it is larger than {@value
+     * #INFLATED_VIEW_LIMIT} bytes, in which case it is extracted to the temp dir as by {@link #getFile(VirtualFile,
+     * VirtualFile)}.  Entries of signed archives are read as streams, so that they are verified.
+     */
+    public SeekableByteChannel openChannel(VirtualFile mountPoint, VirtualFile target) throws IOException {
+        final int node = getExistingNode(mountPoint, target);
+        final File cachedFile = getCachedFile(node);
+        if (cachedFile != null) {
+            return FileChannel.open(cachedFile.toPath(), StandardOpenOption.READ);
+        }
+        if (node == ZipIndex.ROOT) {
+            return source.openChannel(0L, source.size());
+        }
+        if (index.isDirectory(node)) {
             throw VFSMessages.MESSAGES.notAFile(target.getPathName());
         }
-        return zipFile.getInputStream(entry);
+        if (!signed) {
+            switch (index.getMethod(node)) {
+                case ZipEntry.STORED: {
+                    return source.openChannel(index.getDataOffset(source, node), index.getCompressedSize(node));
+                }
+                case ZipEntry.DEFLATED: {
+                    if (index.getSize(node) > INFLATED_VIEW_LIMIT) {
+                        return FileChannel.open(getFile(mountPoint, target).toPath(), StandardOpenOption.READ);
+                    }
+                    final ByteBuffer inflated = getInflatedEntry(node);
+                    return ZipSource.of(inflated).openChannel(0L, inflated.limit());
+                }
+            }
+        }
+        return FileSystem.super.openChannel(mountPoint, target);
     }
 
     /**
      * {@inheritDoc}
      */
     public boolean delete(VirtualFile mountPoint, VirtualFile target) {
-        final ZipNode zipNode = getZipNode(mountPoint, target);
-        if (zipNode == null) {
+        final int node = index.find(mountPoint, target);
+        if (node == ZipIndex.NOT_FOUND) {
             return false;
         }
-        final File cachedFile = zipNode.cachedFile;
+        final File cachedFile = getCachedFile(node);
         return cachedFile != null && cachedFile.delete();
     }
 
@@ -198,40 +457,38 @@ public final class JavaZipFileSystem implements FileSystem {
      * {@inheritDoc}
      */
     public long getSize(VirtualFile mountPoint, VirtualFile target) {
-        final ZipNode zipNode = getZipNode(mountPoint, target);
-        if (zipNode == null) {
+        final int node = index.find(mountPoint, target);
+        if (node == ZipIndex.NOT_FOUND) {
             return 0L;
         }
-        final File cachedFile = zipNode.cachedFile;
-        final JarEntry entry = zipNode.entry;
-        if (zipNode == rootNode) {
-            return archiveFile.length();
+        if (node == ZipIndex.ROOT) {
+            return source.size();
         }
-        return cachedFile != null ? cachedFile.length() : entry == null ? 0L : entry.getSize();
+        final File cachedFile = getCachedFile(node);
+        return cachedFile != null ? cachedFile.length() : index.getSize(node);
     }
 
     /**
      * {@inheritDoc}
      */
     public long getLastModified(VirtualFile mountPoint, VirtualFile target) {
-        final ZipNode zipNode = getZipNode(mountPoint, target);
-        if (zipNode == null) {
+        final int node = index.find(mountPoint, target);
+        if (node == ZipIndex.NOT_FOUND) {
             return 0L;
         }
-        final File cachedFile = zipNode.cachedFile;
-        final JarEntry entry = zipNode.entry;
-        return cachedFile != null ? cachedFile.lastModified() : entry == null ? zipTime : entry.getTime();
+        final File cachedFile = getCachedFile(node);
+        return cachedFile != null ? cachedFile.lastModified() : index.isDirectory(node) ? zipTime : index.getTime(node);
     }
 
     /**
      * {@inheritDoc}
      */
     public boolean exists(VirtualFile mountPoint, VirtualFile target) {
-        final ZipNode zipNode = rootNode.find(mountPoint, target);
-        if (zipNode == null) {
+        final int node = index.find(mountPoint, target);
+        if (node == ZipIndex.NOT_FOUND) {
             return false;
         } else {
-            final File cachedFile = zipNode.cachedFile;
+            final File cachedFile = getCachedFile(node);
             return cachedFile == null || cachedFile.exists();
         }
     }
@@ -240,61 +497,237 @@ public final class JavaZipFileSystem implements FileSystem {
      * {@inheritDoc}
      */
     public boolean isFile(final VirtualFile mountPoint, final VirtualFile target) {
-        final ZipNode zipNode = rootNode.find(mountPoint, target);
-        return zipNode != null && zipNode.entry != null;
+        final int node = index.find(mountPoint, target);
+        return node != ZipIndex.NOT_FOUND && !index.isDirectory(node);
     }
 
     /**
      * {@inheritDoc}
      */
     public boolean isDirectory(VirtualFile mountPoint, VirtualFile target) {
-        final ZipNode zipNode = rootNode.find(mountPoint, target);
-        return zipNode != null && zipNode.entry == null;
+        final int node = index.find(mountPoint, target);
+        return node != ZipIndex.NOT_FOUND && index.isDirectory(node);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public FileAttributes getAttributes(VirtualFile mountPoint, VirtualFile target) {
+        final int node = index.find(mountPoint, target);
+        return node == ZipIndex.NOT_FOUND ? FileAttributes.NON_EXISTENT : getAttributes(node);
+    }
+
+    private FileAttributes getAttributes(int node) {
+        final File cachedFile = getCachedFile(node);
+        if (cachedFile != null) {
+            if (!cachedFile.exists()) {
+                return FileAttributes.NON_EXISTENT;
+            }
+            final long size = node == ZipIndex.ROOT ? source.size() : cachedFile.length();
+            return index.isDirectory(node) ? FileAttributes.directory(size, cachedFile.lastModified()) : FileAttributes.file(size, cachedFile.lastModified());
+        }
+        if (index.isDirectory(node)) {
+            return FileAttributes.directory(node == ZipIndex.ROOT ? source.size() : 0L, zipTime);
+        }
+        return FileAttributes.file(index.getSize(node), index.getTime(node));
     }
 
     /**
      * {@inheritDoc}
      */
     public List<String> getDirectoryEntries(VirtualFile mountPoint, VirtualFile target) {
-        final ZipNode zipNode = getZipNode(mountPoint, target);
-        if (zipNode == null) {
+        final int node = index.find(mountPoint, target);
+        if (node == ZipIndex.NOT_FOUND) {
             return Collections.emptyList();
         }
-        final Map<String, ZipNode> children = zipNode.children;
-        if (children == null) {
-            return Collections.emptyList();
+        return index.getChildNames(node);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, FileAttributes> getDirectoryEntriesWithAttributes(VirtualFile mountPoint, VirtualFile target) {
+        final int node = index.find(mountPoint, target);
+        if (node == ZipIndex.NOT_FOUND || !index.isDirectory(node)) {
+            return Collections.emptyMap();
         }
-        final Collection<ZipNode> values = children.values();
-        final List<String> names = new ArrayList<String>(values.size());
-        for (ZipNode node : values) {
-            names.add(node.name);
+        final int start = index.getFirstChild(node);
+        final int end = start + index.getChildCount(node);
+        final Map<String, FileAttributes> entries = new LinkedHashMap<String, FileAttributes>((end - start) * 4 / 3 + 1);
+        for (int child = start; child < end; child++) {
+            entries.put(index.getName(child), getAttributes(child));
         }
-        return names;
+        return entries;
     }
 
     /**
      * {@inheritDoc}
      */
     public CodeSigner[] getCodeSigners(VirtualFile mountPoint, VirtualFile target) {
-        final ZipNode zipNode = getZipNode(mountPoint, target);
-        if (zipNode == null) {
+        final int node = index.find(mountPoint, target);
+        if (node == ZipIndex.NOT_FOUND || index.isDirectory(node)) {
+            return null;
+        }
+        if (!signed) {
+            return null;
+        }
+        try {
+            final JarEntry jarEntry = getJarFile().getJarEntry(index.getEntryName(node));
+            return jarEntry == null ? null : jarEntry.getCodeSigners();
+        } catch (IOException e) {
             return null;
         }
-        JarEntry jarEntry = zipNode.entry;
-        return jarEntry.getCodeSigners();
-    }
-
-    private ZipNode getZipNode(VirtualFile mountPoint, VirtualFile target) {
-        return rootNode.find(mountPoint, target);
     }
 
-    private ZipNode getExistingZipNode(VirtualFile mountPoint, VirtualFile target)
+    private int getExistingNode(VirtualFile mountPoint, VirtualFile target)
             throws FileNotFoundException {
-        final ZipNode zipNode = rootNode.find(mountPoint, target);
-        if (zipNode == null) {
+        final int node = index.find(mountPoint, target);
+        if (node == ZipIndex.NOT_FOUND) {
             throw new FileNotFoundException(target.getPathName());
         }
-        return zipNode;
+        return node;
+    }
+
+    private InputStream openEntryStream(int node) throws IOException {
+        if (signed) {
+            final JarFile jarFile = getJarFile();
+            final String entryName = index.getEntryName(node);
+            final JarEntry entry = jarFile.getJarEntry(entryName);
+            if (entry == null) {
+                throw new FileNotFoundException(entryName);
+            }
+            return jarFile.getInputStream(entry);
+        }
+        final long dataOffset = index.getDataOffset(source, node);
+        final long compressedSize = index.getCompressedSize(node);
+        switch (index.getMethod(node)) {
+            case ZipEntry.STORED:
+                return source.openStream(dataOffset, compressedSize);
+            case ZipEntry.DEFLATED:
+                return new EntryInflaterInputStream(source.openStream(dataOffset, compressedSize), index.getSize(node));
+            default:
+                throw new ZipException("unsupported compression method for " + index.getEntryName(node));
+        }
+    }
+
+    private void extract(int node, File file) throws IOException {
+        final int method = index.getMethod(node);
+        if (signed || method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+            VFSUtils.copyStreamAndClose(openEntryStream(node), new BufferedOutputStream(new FileOutputStream(file)));
+            return;
+        }
+        final long dataOffset = index.getDataOffset(source, node);
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (method == ZipEntry.STORED) {
+                source.transferTo(dataOffset, index.getCompressedSize(node), out);
+            } else {
+                inflate(dataOffset, index.getCompressedSize(node), out);
+            }
+        }
+    }
+
+    private void inflate(long position, long compressedSize, WritableByteChannel out) throws IOException {
+        final Inflater inflater = new Inflater(true);
+        try {
+            final ByteBuffer in = ByteBuffer.allocateDirect((int) Math.max(1L, Math.min(compressedSize, INFLATE_BUFFER_SIZE)));
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(INFLATE_BUFFER_SIZE);
+            in.flip();
+            long remaining = compressedSize;
+            boolean dummy = false;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (remaining > 0L) {
+                        in.clear();
+                        if (remaining < in.capacity()) {
+                            in.limit((int) remaining);
+                        }
+                        source.readFully(in, position);
+                        in.flip();
+                        position += in.remaining();
+                        remaining -= in.remaining();
+                    } else if (!dummy) {
+                        // raw deflate data may need one byte beyond the end to finish
+                        in.clear();
+                        in.put((byte) 0).flip();
+                        dummy = true;
+                    } else {
+                        throw new ZipException("Unexpected end of ZLIB input stream");
+                    }
+                    inflater.setInput(in);
+                }
+                buffer.clear();
+                final int n;
+                try {
+                    n = inflater.inflate(buffer);
+                } catch (DataFormatException e) {
+                    throw new ZipException(e.getMessage());
+                }
+                if (n == 0 && inflater.needsDictionary()) {
+                    throw new ZipException("Unexpected preset dictionary");
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private ByteBuffer getInflatedEntry(int node) throws IOException {
+        final Integer key = Integer.valueOf(node);
+        final SoftReference<ByteBuffer> ref = inflatedEntries.get(key);
+        ByteBuffer inflated = ref == null ? null : ref.get();
+        if (inflated == null) {
+            inflated = inflateEntry(node);
+            inflatedEntries.put(key, new SoftReference<ByteBuffer>(inflated));
+        }
+        return inflated;
+    }
+
+    private ByteBuffer inflateEntry(int node) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) index.getSize(node));
+        inflate(index.getDataOffset(source, node), index.getCompressedSize(node), new BufferChannel(buffer));
+        buffer.flip();
+        return buffer;
+    }
+
+    private JarFile getJarFile() throws IOException {
+        JarFile jarFile = this.jarFile;
+        if (jarFile == null) {
+            lock.lock();
+            try {
+                jarFile = this.jarFile;
+                if (jarFile == null) {
+                    this.jarFile = jarFile = new JarFile(getArchiveFile());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return jarFile;
+    }
+
+    private File getCachedFile(int node) {
+        final AtomicReferenceArray<File> cachedFiles = this.cachedFiles;
+        return cachedFiles == null ? null : cachedFiles.get(node);
+    }
+
+    private AtomicReferenceArray<File> getCachedFiles() {
+        AtomicReferenceArray<File> cachedFiles = this.cachedFiles;
+        if (cachedFiles == null) {
+            lock.lock();
+            try {
+                cachedFiles = this.cachedFiles;
+                if (cachedFiles == null) {
+                    this.cachedFiles = cachedFiles = new AtomicReferenceArray<File>(index.size());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return cachedFiles;
     }
 
     /**
@@ -308,11 +741,20 @@ public final class JavaZipFileSystem implements FileSystem {
      * {@inheritDoc}
      */
     public File getMountSource() {
-        return archiveFile;
+        return getSpooledArchiveFile();
     }
 
     public URI getRootURI() throws URISyntaxException {
-        return new URI("jar", archiveFile.toURI().toString() + "!/", null);
+        return new URI("jar", getSpooledArchiveFile().toURI().toString() + "!/", null);
+    }
+
+    private File getSpooledArchiveFile() {
+        try {
+            return getArchiveFile();
+        } catch (IOException e) {
+            VFSLogger.ROOT_LOGGER.warnf(e, "Failed to write in-memory archive to %s", archiveFile);
+            return archiveFile;
+        }
     }
 
     /**
@@ -320,52 +762,107 @@ public final class JavaZipFileSystem implements FileSystem {
      */
     public void close() throws IOException {
         VFSLogger.ROOT_LOGGER.tracef("Closing zip filesystem %s", this);
-        VFSUtils.safeClose(new Closeable() {
-            public void close() throws IOException {
-                zipFile.close();
-            }
-        });
+        VFSUtils.safeClose(source);
+        inflatedEntries.clear();
+        final JarFile jarFile = this.jarFile;
+        if (jarFile != null) {
+            VFSUtils.safeClose(new Closeable() {
+                public void close() throws IOException {
+                    jarFile.close();
+                }
+            });
+        }
         tempDir.close();
     }
 
     private File buildFile(File contentsDir, String name) {
-        List<String> tokens = PathTokenizer.getTokens(name);
+        final PathTokenizer.Cursor cursor = PathTokenizer.cursor(name);
         File currentFile = contentsDir;
-        for (String token : tokens) {
-            currentFile = new File(currentFile, token);
+        while (cursor.next()) {
+            currentFile = new File(currentFile, cursor.getToken());
         }
         currentFile.getParentFile().mkdirs();
         return currentFile;
     }
 
-    private static final class ZipNode {
+    /**
+     * A channel which fills a buffer, and refuses to overflow it.
+     */
+    private static final class BufferChannel implements WritableByteChannel {
+        private final ByteBuffer buffer;
 
-        // immutable child map
-        private final Map<String, ZipNode> children;
-        private final String name;
-        private final JarEntry entry;
-        private volatile File cachedFile;
+        BufferChannel(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
 
-        private ZipNode(Map<String, ZipNode> children, String name, JarEntry entry) {
-            this.children = children;
-            this.name = name;
-            this.entry = entry;
+        public int write(ByteBuffer src) throws IOException {
+            final int count = src.remaining();
+            if (count > buffer.remaining()) {
+                throw new ZipException("Entry is larger than its recorded size");
+            }
+            buffer.put(src);
+            return count;
         }
 
-        private ZipNode find(VirtualFile mountPoint, VirtualFile target) {
-            if (mountPoint.equals(target)) {
-                return this;
-            } else {
-                final ZipNode parent = find(mountPoint, target.getParent());
-                if (parent == null) {
-                    return null;
-                }
-                final Map<String, ZipNode> children = parent.children;
-                if (children == null) {
-                    return null;
+        public boolean isOpen() {
+            return true;
+        }
+
+        public void close() {
+        }
+    }
+
+    /**
+     * The stream of a deflated entry.  Raw deflate data carries no header, so the inflater is given a dummy trailing
+     * byte once the compressed data is exhausted, as {@code java.util.zip.ZipFile} does.
+     */
+    private static final class EntryInflaterInputStream extends InflaterInputStream {
+        private long remaining;
+        private boolean eof;
+        private boolean closed;
+
+        EntryInflaterInputStream(InputStream in, long size) {
+            super(in, new Inflater(true), (int) Math.max(64L, Math.min(8192L, size)));
+            remaining = size;
+        }
+
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new ZipException("Unexpected end of ZLIB input stream");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int res = super.read(b, off, len);
+            if (res > 0) {
+                remaining -= res;
+            }
+            return res;
+        }
+
+        public int available() throws IOException {
+            if (closed) {
+                throw VFSMessages.MESSAGES.streamIsClosed();
+            }
+            return (int) Math.max(0L, Math.min(Integer.MAX_VALUE, remaining));
+        }
+
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    inf.end();
                 }
-                return children.get(target.getName());
             }
         }
     }
-}
\ No newline at end of file
+}
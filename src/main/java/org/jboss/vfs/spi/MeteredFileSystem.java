@@ -0,0 +1,349 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.security.CodeSigner;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+import org.jboss.vfs.FileAttributes;
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.spi.FileSystemMetrics.Operation;
+
+/**
+ * A filesystem which passes every call on to another one, recording the number, outcome and duration of each call in
+ * a {@link FileSystemMetrics}.
+ */
+public final class MeteredFileSystem implements FileSystem {
+
+    private final FileSystem delegate;
+    private final FileSystemMetrics metrics;
+
+    /**
+     * Create a new instance.
+     *
+     * @param delegate the filesystem to meter
+     * @param metrics  the metrics to record into
+     */
+    public MeteredFileSystem(FileSystem delegate, FileSystemMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get the metered filesystem.
+     *
+     * @return the filesystem
+     */
+    public FileSystem getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Get the metrics recorded for this filesystem.
+     *
+     * @return the metrics
+     */
+    public FileSystemMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public File getFile(VirtualFile mountPoint, VirtualFile target) throws IOException {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final File file = delegate.getFile(mountPoint, target);
+            ok = true;
+            return file;
+        } finally {
+            metrics.record(Operation.GET_FILE, start, !ok);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public InputStream openInputStream(VirtualFile mountPoint, VirtualFile target) throws IOException {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final InputStream stream = delegate.openInputStream(mountPoint, target);
+            ok = true;
+            return stream;
+        } finally {
+            metrics.record(Operation.OPEN_INPUT_STREAM, start, !ok);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ByteBuffer getContent(VirtualFile mountPoint, VirtualFile target) throws IOException {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final ByteBuffer content = delegate.getContent(mountPoint, target);
+            ok = true;
+            return content;
+        } finally {
+            metrics.record(Operation.GET_CONTENT, start, !ok);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SeekableByteChannel openChannel(VirtualFile mountPoint, VirtualFile target) throws IOException {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final SeekableByteChannel channel = delegate.openChannel(mountPoint, target);
+            ok = true;
+            return channel;
+        } finally {
+            metrics.record(Operation.OPEN_CHANNEL, start, !ok);
+        }
+    }
+
+    /**
+     * {@inheritDoc}  The call is recorded when the read completes.
+     */
+    public CompletableFuture<ByteBuffer> readAsync(VirtualFile mountPoint, VirtualFile target) {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final CompletableFuture<ByteBuffer> future = delegate.readAsync(mountPoint, target);
+            ok = true;
+            future.whenComplete((buffer, failure) -> metrics.record(Operation.READ_ASYNC, start, failure != null));
+            return future;
+        } finally {
+            if (!ok) {
+                metrics.record(Operation.READ_ASYNC, start, true);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}  The reads of the publisher are not recorded.
+     */
+    public Flow.Publisher<ByteBuffer> getContentPublisher(VirtualFile mountPoint, VirtualFile target) {
+        return delegate.getContentPublisher(mountPoint, target);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean delete(VirtualFile mountPoint, VirtualFile target) {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final boolean deleted = delegate.delete(mountPoint, target);
+            ok = true;
+            return deleted;
+        } finally {
+            metrics.record(Operation.DELETE, start, !ok);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getSize(VirtualFile mountPoint, VirtualFile target) {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final long size = delegate.getSize(mountPoint, target);
+            ok = true;
+            return size;
+        } finally {
+            metrics.record(Operation.GET_SIZE, start, !ok);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getLastModified(VirtualFile mountPoint, VirtualFile target) {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final long lastModified = delegate.getLastModified(mountPoint, target);
+            ok = true;
+            return lastModified;
+        } finally {
+            metrics.record(Operation.GET_LAST_MODIFIED, start, !ok);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean exists(VirtualFile mountPoint, VirtualFile target) {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final boolean exists = delegate.exists(mountPoint, target);
+            ok = true;
+            return exists;
+        } finally {
+            metrics.record(Operation.EXISTS, start, !ok);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isFile(VirtualFile mountPoint, VirtualFile target) {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final boolean isFile = delegate.isFile(mountPoint, target);
+            ok = true;
+            return isFile;
+        } finally {
+            metrics.record(Operation.IS_FILE, start, !ok);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isDirectory(VirtualFile mountPoint, VirtualFile target) {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final boolean isDirectory = delegate.isDirectory(mountPoint, target);
+            ok = true;
+            return isDirectory;
+        } finally {
+            metrics.record(Operation.IS_DIRECTORY, start, !ok);
+        }
+    }
+
+    /**
+     * {@inheritDoc}  Invalidation is not metered.
+     */
+    public void invalidate(VirtualFile mountPoint, VirtualFile target) {
+        delegate.invalidate(mountPoint, target);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public FileAttributes getAttributes(VirtualFile mountPoint, VirtualFile target) {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final FileAttributes attributes = delegate.getAttributes(mountPoint, target);
+            ok = true;
+            return attributes;
+        } finally {
+            metrics.record(Operation.GET_ATTRIBUTES, start, !ok);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<String> getDirectoryEntries(VirtualFile mountPoint, VirtualFile target) {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final List<String> entries = delegate.getDirectoryEntries(mountPoint, target);
+            ok = true;
+            return entries;
+        } finally {
+            metrics.record(Operation.GET_DIRECTORY_ENTRIES, start, !ok);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, FileAttributes> getDirectoryEntriesWithAttributes(VirtualFile mountPoint, VirtualFile target) {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final Map<String, FileAttributes> entries = delegate.getDirectoryEntriesWithAttributes(mountPoint, target);
+            ok = true;
+            return entries;
+        } finally {
+            metrics.record(Operation.GET_DIRECTORY_ENTRIES_WITH_ATTRIBUTES, start, !ok);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public CodeSigner[] getCodeSigners(VirtualFile mountPoint, VirtualFile target) {
+        final long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            final CodeSigner[] signers = delegate.getCodeSigners(mountPoint, target);
+            ok = true;
+            return signers;
+        } finally {
+            metrics.record(Operation.GET_CODE_SIGNERS, start, !ok);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isReadOnly() {
+        return delegate.isReadOnly();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public File getMountSource() {
+        return delegate.getMountSource();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public URI getRootURI() throws URISyntaxException {
+        return delegate.getRootURI();
+    }
+
+    public String toString() {
+        return delegate.toString();
+    }
+}
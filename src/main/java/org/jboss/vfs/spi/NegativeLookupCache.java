@@ -0,0 +1,145 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * A bounded cache of lookups which found nothing, so that repeated probes for missing resources can be answered without
+ * asking the filesystem again.  Once the cache is full, an arbitrary entry makes way for each new one.  The largest
+ * number of entries is given by the {@value #SIZE_KEY} system property, and defaults to 4096.
+ * <p/>
+ * A lookup which may race with a change takes a {@link #stamp()} before it looks; its miss is only kept if nothing was
+ * removed from the cache in the meantime, since the removal may have been for the change which the lookup missed.
+ *
+ * @param <K> the key type
+ */
+final class NegativeLookupCache<K> {
+
+    /**
+     * The system property which sets the largest number of misses kept by each cache, or 0 to keep none.
+     */
+    static final String SIZE_KEY = "jboss.vfs.negativeLookupCache.size";
+
+    private static final int DEFAULT_SIZE;
+
+    static {
+        DEFAULT_SIZE = AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+            public Integer run() {
+                return Integer.getInteger(SIZE_KEY, 4096);
+            }
+        }).intValue();
+    }
+
+    private final int size;
+    private final ConcurrentMap<K, Boolean> misses = new ConcurrentHashMap<K, Boolean>();
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Create a cache of the size given by the {@value #SIZE_KEY} system property.
+     */
+    NegativeLookupCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Create a cache of the given size.
+     *
+     * @param size the largest number of misses to keep, or 0 to keep none
+     */
+    NegativeLookupCache(int size) {
+        this.size = Math.max(0, size);
+    }
+
+    /**
+     * Take a stamp before a lookup whose miss may be added.
+     *
+     * @return the stamp
+     */
+    long stamp() {
+        return generation.get();
+    }
+
+    /**
+     * Determine whether a lookup is known to find nothing.
+     *
+     * @param key the key
+     * @return {@code true} if the lookup is a known miss
+     */
+    boolean contains(K key) {
+        return misses.containsKey(key);
+    }
+
+    /**
+     * Record a miss, unless anything was removed since the stamp was taken.
+     *
+     * @param key   the key
+     * @param stamp the stamp taken before the lookup
+     */
+    void add(K key, long stamp) {
+        if (size == 0 || generation.get() != stamp) {
+            return;
+        }
+        if (misses.size() >= size) {
+            final Iterator<K> i = misses.keySet().iterator();
+            if (i.hasNext()) {
+                i.next();
+                i.remove();
+            }
+        }
+        misses.put(key, Boolean.TRUE);
+        if (generation.get() != stamp) {
+            misses.remove(key);
+        }
+    }
+
+    /**
+     * Forget a miss.
+     *
+     * @param key the key
+     */
+    void remove(K key) {
+        generation.incrementAndGet();
+        misses.remove(key);
+    }
+
+    /**
+     * Forget each miss whose key matches a predicate.
+     *
+     * @param predicate the predicate
+     */
+    void removeIf(Predicate<? super K> predicate) {
+        generation.incrementAndGet();
+        misses.keySet().removeIf(predicate);
+    }
+
+    /**
+     * Forget every miss.
+     */
+    void clear() {
+        generation.incrementAndGet();
+        misses.clear();
+    }
+}
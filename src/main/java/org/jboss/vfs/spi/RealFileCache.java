@@ -0,0 +1,328 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import java.io.File;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.vfs.FileAttributes;
+
+/**
+ * The cache of directory listings and file attributes of a caching {@link RealFileSystem}.  Nothing is cached for a
+ * file unless its directory, and every directory above that up to the filesystem root, is being watched; a watch
+ * follows the directory rather than its name, so a rename of any of them is only seen by the watch on the directory
+ * above.  Any change reported in a watched directory drops what is cached for that directory and for the changed
+ * entry, and for everything beneath the entry.  The attributes of the filesystem root itself are never cached, as
+ * nothing watches the directory which holds it.  Once the cache holds its largest number of attributes or listings,
+ * an arbitrary one makes way for each new one, and once no more directories may be watched, nothing more is cached.
+ * <p/>
+ * Files which do not exist are not cached with the attributes, but in a bounded {@link NegativeLookupCache}: a probe
+ * for a missing file records the first missing directory on its path, once the directories above that are watched,
+ * so that repeated probes beneath it are answered without a system call.  A probe in a directory whose listing is
+ * cached is answered from the listing.
+ * <p/>
+ * Values are read outside any lock.  An invalidation which happens while a value is being read bumps the generation,
+ * and the value read is then discarded rather than cached, since it may predate the change.
+ */
+final class RealFileCache implements DirectoryWatcher.Listener {
+
+    private final Path root;
+    private final int size;
+    private final ConcurrentMap<Path, FileAttributes> attributes = new ConcurrentHashMap<Path, FileAttributes>();
+    private final ConcurrentMap<Path, Map<String, FileAttributes>> listings = new ConcurrentHashMap<Path, Map<String, FileAttributes>>();
+    private final NegativeLookupCache<Path> negatives = new NegativeLookupCache<Path>();
+    private final ConcurrentMap<Path, WatchKey> watched = new ConcurrentHashMap<Path, WatchKey>();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile boolean closed;
+
+    RealFileCache(File root, int size) {
+        this.root = root.toPath();
+        this.size = Math.max(0, size);
+    }
+
+    /**
+     * Get the attributes of a file.
+     *
+     * @param file          the file
+     * @param caseSensitive {@code true} to treat a file whose name differs in case from the real one as non-existent
+     * @return the attributes
+     */
+    FileAttributes getAttributes(File file, boolean caseSensitive) {
+        final Path path = toPath(file);
+        if (path == null) {
+            return FileAttributes.NON_EXISTENT;
+        }
+        FileAttributes value = attributes.get(path);
+        if (value != null) {
+            return value;
+        }
+        if (path.equals(root)) {
+            return RealFileSystem.readAttributes(file, caseSensitive);
+        }
+        // a miss on the file, or on any directory leading to it, means that it does not exist
+        for (Path p = path; p != null && !p.equals(root); p = p.getParent()) {
+            if (negatives.contains(p)) {
+                return FileAttributes.NON_EXISTENT;
+            }
+        }
+        final Path dir = path.getParent();
+        final Map<String, FileAttributes> listing = listings.get(dir);
+        if (listing != null) {
+            final String name = path.getFileName().toString();
+            value = listing.get(name);
+            // names from the listing are exact, so they are only trusted when no case check is wanted
+            if (value != null && !caseSensitive) {
+                return value;
+            }
+            if (value == null && (caseSensitive || !containsIgnoreCase(listing.keySet(), name))) {
+                return FileAttributes.NON_EXISTENT;
+            }
+        }
+        // watch the directories leading to the file first, so that no change after the read can be missed
+        final Path watchedDir = watchTree(dir);
+        final Path missing = watchedDir == null || watchedDir.equals(dir) ? path : watchedDir.resolve(path.getName(watchedDir.getNameCount()));
+        final long generation = this.generation.get();
+        final long stamp = negatives.stamp();
+        value = RealFileSystem.readAttributes(file, caseSensitive);
+        if (watchedDir != null) {
+            if (value.exists()) {
+                if (missing == path) {
+                    store(attributes, path, value, generation);
+                }
+            } else if (missing == path || !RealFileSystem.readAttributes(missing.toFile(), caseSensitive).exists()) {
+                // the first missing directory is recorded, so that a probe anywhere beneath it is known to miss
+                negatives.add(missing, stamp);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Get the entries of a directory, and the attributes of each.
+     *
+     * @param dir           the directory
+     * @param caseSensitive {@code true} if file attributes are read with a case check, which the entries do not have
+     * @return the unmodifiable map of entry names to attributes, empty if the file is not a readable directory
+     */
+    Map<String, FileAttributes> getDirectoryEntriesWithAttributes(File dir, boolean caseSensitive) {
+        final Path path = toPath(dir);
+        if (path == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, FileAttributes> listing = listings.get(path);
+        if (listing != null) {
+            return listing;
+        }
+        final boolean cacheable = path.equals(watchTree(path));
+        final long generation = this.generation.get();
+        listing = Collections.unmodifiableMap(RealFileSystem.readDirectoryEntriesWithAttributes(dir));
+        if (cacheable) {
+            store(listings, path, listing, generation);
+            if (!caseSensitive) {
+                for (Map.Entry<String, FileAttributes> entry : listing.entrySet()) {
+                    store(attributes, path.resolve(entry.getKey()), entry.getValue(), generation);
+                }
+            }
+        }
+        return listing;
+    }
+
+    /**
+     * Drop everything cached for a file and, if it is a directory, for its contents, along with what is cached for each
+     * directory leading to it, which may have been created along with it.
+     *
+     * @param file the file
+     */
+    void invalidate(File file) {
+        final Path path = toPath(file);
+        if (path != null) {
+            generation.incrementAndGet();
+            invalidateTree(path);
+            for (Path p = path.getParent(); p != null && p.startsWith(root); p = p.getParent()) {
+                listings.remove(p);
+                attributes.remove(p);
+                negatives.remove(p);
+            }
+        }
+    }
+
+    /**
+     * Drop everything and stop watching.
+     */
+    void close() {
+        closed = true;
+        generation.incrementAndGet();
+        for (Map.Entry<Path, WatchKey> entry : watched.entrySet()) {
+            DirectoryWatcher.unregister(entry.getValue(), this);
+        }
+        watched.clear();
+        attributes.clear();
+        listings.clear();
+        negatives.clear();
+    }
+
+    public void changed(Path dir, Path child) {
+        generation.incrementAndGet();
+        if (child == null) {
+            invalidateTree(dir);
+        } else {
+            attributes.remove(child);
+            listings.remove(child);
+            negatives.remove(child);
+            if (watched.containsKey(child)) {
+                // a watched directory was replaced or renamed, and its watch may no longer match its path; since
+                // nothing beneath an unwatched directory is cached, this drops all that the change may have made stale
+                invalidateTree(child);
+            }
+        }
+        listings.remove(dir);
+        attributes.remove(dir);
+    }
+
+    public void cancelled(Path dir) {
+        generation.incrementAndGet();
+        watched.remove(dir);
+        invalidateTree(dir);
+        invalidateParent(dir);
+    }
+
+    private void invalidateTree(Path top) {
+        for (Iterator<Path> i = attributes.keySet().iterator(); i.hasNext(); ) {
+            if (i.next().startsWith(top)) {
+                i.remove();
+            }
+        }
+        for (Iterator<Path> i = listings.keySet().iterator(); i.hasNext(); ) {
+            if (i.next().startsWith(top)) {
+                i.remove();
+            }
+        }
+        negatives.removeIf(p -> p.startsWith(top));
+        for (Iterator<Map.Entry<Path, WatchKey>> i = watched.entrySet().iterator(); i.hasNext(); ) {
+            final Map.Entry<Path, WatchKey> entry = i.next();
+            if (entry.getKey().startsWith(top)) {
+                i.remove();
+                DirectoryWatcher.unregister(entry.getValue(), this);
+            }
+        }
+    }
+
+    private void invalidateParent(Path path) {
+        final Path parent = path.getParent();
+        if (parent != null) {
+            listings.remove(parent);
+            attributes.remove(parent);
+        }
+    }
+
+    /**
+     * Make sure that each directory from the filesystem root down to a directory is watched.
+     *
+     * @param dir the directory
+     * @return the deepest of the directories which is watched along with all those above it, or {@code null} if not
+     *         even the root is
+     */
+    private Path watchTree(Path dir) {
+        if (dir == null || !dir.startsWith(root) || !watch(root)) {
+            return null;
+        }
+        Path watchedDir = root;
+        for (int i = root.getNameCount(); i < dir.getNameCount(); i++) {
+            final Path next = watchedDir.resolve(dir.getName(i));
+            if (!watch(next)) {
+                break;
+            }
+            watchedDir = next;
+        }
+        return watchedDir;
+    }
+
+    /**
+     * Make sure that a directory is watched.
+     *
+     * @param dir the directory
+     * @return {@code true} if it is watched, {@code false} if it cannot be
+     */
+    private boolean watch(Path dir) {
+        if (closed || dir == null) {
+            return false;
+        }
+        if (watched.containsKey(dir)) {
+            return true;
+        }
+        final WatchKey key = DirectoryWatcher.register(dir, this);
+        if (key == null) {
+            return false;
+        }
+        watched.putIfAbsent(dir, key);
+        if (!key.isValid()) {
+            // cancelled before it was recorded
+            watched.remove(dir, key);
+            return false;
+        }
+        if (closed) {
+            DirectoryWatcher.unregister(key, this);
+            return false;
+        }
+        return true;
+    }
+
+    private <V> void store(ConcurrentMap<Path, V> map, Path path, V value, long generation) {
+        if (size == 0) {
+            return;
+        }
+        if (map.size() >= size) {
+            final Iterator<Path> i = map.keySet().iterator();
+            if (i.hasNext()) {
+                i.next();
+                i.remove();
+            }
+        }
+        map.put(path, value);
+        if (this.generation.get() != generation) {
+            map.remove(path, value);
+        }
+    }
+
+    private static boolean containsIgnoreCase(Set<String> names, String name) {
+        for (String candidate : names) {
+            if (candidate.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Path toPath(File file) {
+        try {
+            return file.toPath();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+}
@@ -28,29 +28,101 @@ import java.io.InputStream;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.CodeSigner;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
+import org.jboss.vfs.FileAttributes;
 import org.jboss.vfs.VFSLogger;
+import org.jboss.vfs.VFSMessages;
 import org.jboss.vfs.VFSUtils;
 import org.jboss.vfs.VirtualFile;
 
 /**
  * A real filesystem.
+ * <p/>
+ * A real filesystem may cache directory listings and file attributes, along with a bounded number of lookups for files
+ * which do not exist, so that repeated scans and probes of an unchanged tree are answered from memory.  The cache is
+ * kept current by watching the directories it holds with a {@link java.nio.file.WatchService}; where watching is slow
+ * or lossy, {@link #invalidate(VirtualFile, VirtualFile)} drops cached state by hand.  Caching is chosen when the
+ * filesystem is constructed, and is off unless the {@value #CACHE_KEY} system property is {@code true}.  The cache is
+ * bounded by the {@value #CACHE_SIZE_KEY} property, the lookups for missing files by the
+ * {@code jboss.vfs.negativeLookupCache.size} property, and the directories watched by the
+ * {@value #CACHE_WATCHES_KEY} property.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 public final class RealFileSystem implements FileSystem {
 
+    /**
+     * The system property which turns on caching for real filesystems which are not told whether to cache.
+     */
+    public static final String CACHE_KEY = "jboss.vfs.real.cache";
+
+    /**
+     * The system property which sets the largest number of directories watched by all caching real filesystems
+     * together.  Nothing more is cached once it is reached.
+     */
+    public static final String CACHE_WATCHES_KEY = "jboss.vfs.real.cache.maxWatches";
+
+    /**
+     * The system property which sets the largest number of file attributes, and of directory listings, kept by each
+     * caching real filesystem.
+     */
+    public static final String CACHE_SIZE_KEY = "jboss.vfs.real.cache.size";
+
+    static final int CACHE_WATCHES;
+
+    private static final boolean CACHE_DEFAULT;
+    private static final int CACHE_SIZE;
     private static final boolean NEEDS_CONVERSION = File.separatorChar != '/';
+    private static final int MAP_THRESHOLD = 65536;
+    private static final Set<OpenOption> READ_OPTIONS = Collections.<OpenOption>singleton(StandardOpenOption.READ);
+
+    static {
+        CACHE_DEFAULT = doPrivileged(new PrivilegedAction<Boolean>() {
+            public Boolean run() {
+                return Boolean.valueOf(Boolean.getBoolean(CACHE_KEY));
+            }
+        }).booleanValue();
+        CACHE_WATCHES = doPrivileged(new PrivilegedAction<Integer>() {
+            public Integer run() {
+                return Integer.getInteger(CACHE_WATCHES_KEY, 1024);
+            }
+        }).intValue();
+        CACHE_SIZE = doPrivileged(new PrivilegedAction<Integer>() {
+            public Integer run() {
+                return Integer.getInteger(CACHE_SIZE_KEY, 16384);
+            }
+        }).intValue();
+    }
 
     private final File realRoot;
     private final boolean privileged;
+    // null unless caching
+    private final RealFileCache cache;
 
     /**
      * Construct a real filesystem with the given real root.
@@ -68,6 +140,17 @@ public final class RealFileSystem implements FileSystem {
      * @param privileged {@code true} to check permissions once up front, {@code false} to check at access time
      */
     public RealFileSystem(File realRoot, boolean privileged) {
+        this(realRoot, privileged, CACHE_DEFAULT);
+    }
+
+    /**
+     * Construct a real filesystem with the given real root.
+     *
+     * @param realRoot   the real root
+     * @param privileged {@code true} to check permissions once up front, {@code false} to check at access time
+     * @param cached     {@code true} to cache directory listings and file attributes
+     */
+    public RealFileSystem(File realRoot, boolean privileged, boolean cached) {
         if (privileged) {
             final SecurityManager sm = System.getSecurityManager();
             if (sm != null) {
@@ -83,7 +166,8 @@ public final class RealFileSystem implements FileSystem {
         }
         this.realRoot = canonicalRoot;
         this.privileged = privileged;
-        VFSLogger.ROOT_LOGGER.tracef("Constructed real %s filesystem at root %s", privileged ? "privileged" : "unprivileged", realRoot);
+        cache = cached ? new RealFileCache(canonicalRoot, CACHE_SIZE) : null;
+        VFSLogger.ROOT_LOGGER.tracef("Constructed real %s %sfilesystem at root %s", privileged ? "privileged" : "unprivileged", cached ? "caching " : "", realRoot);
     }
 
     private static <T> T doIoPrivileged(PrivilegedExceptionAction<T> action) throws IOException {
@@ -113,6 +197,107 @@ public final class RealFileSystem implements FileSystem {
         }) : new FileInputStream(getFile(mountPoint, target));
     }
 
+    /**
+     * {@inheritDoc}  The file is read through an {@link AsynchronousFileChannel}.
+     */
+    public CompletableFuture<ByteBuffer> readAsync(final VirtualFile mountPoint, final VirtualFile target) {
+        final CompletableFuture<ByteBuffer> future = new CompletableFuture<ByteBuffer>();
+        final AsynchronousFileChannel channel;
+        try {
+            channel = openAsynchronousChannel(mountPoint, target);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        final ByteBuffer buffer;
+        try {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw VFSMessages.MESSAGES.fileTooLarge(target.getPathName());
+            }
+            buffer = ByteBuffer.allocate((int) size);
+        } catch (IOException e) {
+            VFSUtils.safeClose(channel);
+            future.completeExceptionally(e);
+            return future;
+        }
+        readFully(channel, buffer, future);
+        return future;
+    }
+
+    private static void readFully(final AsynchronousFileChannel channel, final ByteBuffer buffer, final CompletableFuture<ByteBuffer> future) {
+        if (!buffer.hasRemaining()) {
+            VFSUtils.safeClose(channel);
+            buffer.flip();
+            future.complete(buffer);
+            return;
+        }
+        channel.read(buffer, buffer.position(), null, new CompletionHandler<Integer, Void>() {
+            public void completed(Integer result, Void attachment) {
+                if (result.intValue() < 0) {
+                    // the file shrank since its size was read
+                    VFSUtils.safeClose(channel);
+                    buffer.flip();
+                    future.complete(buffer);
+                } else {
+                    readFully(channel, buffer, future);
+                }
+            }
+
+            public void failed(Throwable exc, Void attachment) {
+                VFSUtils.safeClose(channel);
+                future.completeExceptionally(exc);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}  The file is read through an {@link AsynchronousFileChannel}.
+     */
+    public Flow.Publisher<ByteBuffer> getContentPublisher(final VirtualFile mountPoint, final VirtualFile target) {
+        return new ContentPublisher(() -> ContentPublisher.channelSource(() -> openAsynchronousChannel(mountPoint, target)));
+    }
+
+    /**
+     * {@inheritDoc}  Files of {@value #MAP_THRESHOLD} bytes or more are mapped rather than read; on some platforms a
+     * mapped file cannot be deleted until the buffer has been garbage collected.
+     */
+    public ByteBuffer getContent(final VirtualFile mountPoint, final VirtualFile target) throws IOException {
+        try (FileChannel channel = openChannel(mountPoint, target)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw VFSMessages.MESSAGES.fileTooLarge(target.getPathName());
+            }
+            if (size >= MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public FileChannel openChannel(final VirtualFile mountPoint, final VirtualFile target) throws IOException {
+        return privileged ? doIoPrivileged(new PrivilegedExceptionAction<FileChannel>() {
+            public FileChannel run() throws Exception {
+                return FileChannel.open(getFile(mountPoint, target).toPath(), READ_OPTIONS);
+            }
+        }) : FileChannel.open(getFile(mountPoint, target).toPath(), READ_OPTIONS);
+    }
+
+    private AsynchronousFileChannel openAsynchronousChannel(final VirtualFile mountPoint, final VirtualFile target) throws IOException {
+        return privileged ? doIoPrivileged(new PrivilegedExceptionAction<AsynchronousFileChannel>() {
+            public AsynchronousFileChannel run() throws Exception {
+                return AsynchronousFileChannel.open(getFile(mountPoint, target).toPath(), READ_OPTIONS, IoExecutor.get());
+            }
+        }) : AsynchronousFileChannel.open(getFile(mountPoint, target).toPath(), READ_OPTIONS, IoExecutor.get());
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -138,17 +323,33 @@ public final class RealFileSystem implements FileSystem {
      */
     public boolean delete(VirtualFile mountPoint, VirtualFile target) {
         final File file = getFile(mountPoint, target);
-        return privileged ? doPrivileged(new PrivilegedAction<Boolean>() {
+        final boolean deleted = privileged ? doPrivileged(new PrivilegedAction<Boolean>() {
             public Boolean run() {
                 return Boolean.valueOf(file.delete());
             }
         }).booleanValue() : file.delete();
+        if (cache != null) {
+            cache.invalidate(file);
+        }
+        return deleted;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void invalidate(VirtualFile mountPoint, VirtualFile target) {
+        if (cache != null) {
+            cache.invalidate(getFile(mountPoint, target));
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     public long getSize(VirtualFile mountPoint, VirtualFile target) {
+        if (cache != null) {
+            return getAttributes(mountPoint, target).getSize();
+        }
         final File file = getFile(mountPoint, target);
         return privileged ? doPrivileged(new PrivilegedAction<Long>() {
             public Long run() {
@@ -161,6 +362,9 @@ public final class RealFileSystem implements FileSystem {
      * {@inheritDoc}
      */
     public long getLastModified(VirtualFile mountPoint, VirtualFile target) {
+        if (cache != null) {
+            return getAttributes(mountPoint, target).getLastModified();
+        }
         final File file = getFile(mountPoint, target);
         return privileged ? doPrivileged(new PrivilegedAction<Long>() {
             public Long run() {
@@ -173,6 +377,9 @@ public final class RealFileSystem implements FileSystem {
      * {@inheritDoc}
      */
     public boolean exists(VirtualFile mountPoint, VirtualFile target) {
+        if (cache != null) {
+            return getAttributes(mountPoint, target).exists();
+        }
         final File file = getFile(mountPoint, target);
         return privileged ? doPrivileged(new PrivilegedAction<Boolean>() {
             public Boolean run() {
@@ -186,6 +393,9 @@ public final class RealFileSystem implements FileSystem {
      * {@inheritDoc}
      */
     public boolean isFile(final VirtualFile mountPoint, final VirtualFile target) {
+        if (cache != null) {
+            return getAttributes(mountPoint, target).isFile();
+        }
         final File file = getFile(mountPoint, target);
         return privileged ? doPrivileged(new PrivilegedAction<Boolean>() {
             public Boolean run() {
@@ -198,6 +408,9 @@ public final class RealFileSystem implements FileSystem {
      * {@inheritDoc}
      */
     public boolean isDirectory(VirtualFile mountPoint, VirtualFile target) {
+        if (cache != null) {
+            return getAttributes(mountPoint, target).isDirectory();
+        }
         final File file = getFile(mountPoint, target);
         return privileged ? doPrivileged(new PrivilegedAction<Boolean>() {
             public Boolean run() {
@@ -206,10 +419,95 @@ public final class RealFileSystem implements FileSystem {
         }).booleanValue() : file.isDirectory();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public FileAttributes getAttributes(VirtualFile mountPoint, VirtualFile target) {
+        final File file = getFile(mountPoint, target);
+        return privileged ? doPrivileged(new PrivilegedAction<FileAttributes>() {
+            public FileAttributes run() {
+                return getAttributes(file);
+            }
+        }) : getAttributes(file);
+    }
+
+    private FileAttributes getAttributes(File file) {
+        return cache != null ? cache.getAttributes(file, VFSUtils.isForceCaseSensitive()) : readAttributes(file, VFSUtils.isForceCaseSensitive());
+    }
+
+    /**
+     * Read the attributes of a real file with a single stat call.
+     *
+     * @param file          the file
+     * @param caseSensitive {@code true} to treat a file whose name differs in case from the real one as non-existent
+     * @return the attributes
+     */
+    static FileAttributes readAttributes(File file, boolean caseSensitive) {
+        final Path path;
+        try {
+            path = file.toPath();
+        } catch (InvalidPathException e) {
+            return FileAttributes.NON_EXISTENT;
+        }
+        final FileAttributes attributes = readAttributes(path);
+        if (caseSensitive && attributes.exists() && !VFSUtils.exists(file)) {
+            return FileAttributes.NON_EXISTENT;
+        }
+        return attributes;
+    }
+
+    private static FileAttributes readAttributes(Path path) {
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return FileAttributes.NON_EXISTENT;
+        }
+        return FileAttributes.of(attributes.isRegularFile(), attributes.isDirectory(), attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Read a real directory, and the attributes of each of its entries.  Names come straight from the directory so no
+     * case check is needed.
+     *
+     * @param dir the directory
+     * @return the map of entry names to attributes, empty if the file is not a readable directory
+     */
+    static Map<String, FileAttributes> readDirectoryEntriesWithAttributes(File dir) {
+        final Map<String, FileAttributes> entries = new LinkedHashMap<String, FileAttributes>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+            for (Path path : stream) {
+                entries.put(path.getFileName().toString(), readAttributes(path));
+            }
+        } catch (IOException | InvalidPathException | DirectoryIteratorException e) {
+            return Collections.emptyMap();
+        }
+        return entries;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, FileAttributes> getDirectoryEntriesWithAttributes(VirtualFile mountPoint, VirtualFile target) {
+        final File file = getFile(mountPoint, target);
+        return privileged ? doPrivileged(new PrivilegedAction<Map<String, FileAttributes>>() {
+            public Map<String, FileAttributes> run() {
+                return getDirectoryEntriesWithAttributes(file);
+            }
+        }) : getDirectoryEntriesWithAttributes(file);
+    }
+
+    private Map<String, FileAttributes> getDirectoryEntriesWithAttributes(File dir) {
+        return cache != null ? cache.getDirectoryEntriesWithAttributes(dir, VFSUtils.isForceCaseSensitive()) : readDirectoryEntriesWithAttributes(dir);
+    }
+
     /**
      * {@inheritDoc}
      */
     public List<String> getDirectoryEntries(VirtualFile mountPoint, VirtualFile target) {
+        if (cache != null) {
+            return new ArrayList<String>(getDirectoryEntriesWithAttributes(mountPoint, target).keySet());
+        }
         final File file = getFile(mountPoint, target);
         final String[] names = privileged ? doPrivileged(new PrivilegedAction<String[]>() {
             public String[] run() {
@@ -241,6 +539,9 @@ public final class RealFileSystem implements FileSystem {
      * {@inheritDoc}
      */
     public void close() throws IOException {
-        // no operation - the real FS can't be closed
+        // the real FS itself can't be closed
+        if (cache != null) {
+            cache.close();
+        }
     }
 }
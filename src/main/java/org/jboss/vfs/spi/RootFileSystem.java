@@ -28,7 +28,9 @@ import java.security.CodeSigner;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
+import org.jboss.vfs.FileAttributes;
 import org.jboss.vfs.VirtualFile;
 
 /**
@@ -107,6 +109,13 @@ public final class RootFileSystem implements FileSystem {
         return getFile(mountPoint, target).isDirectory();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public FileAttributes getAttributes(VirtualFile mountPoint, VirtualFile target) {
+        return RealFileSystem.readAttributes(getFile(mountPoint, target), false);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -115,6 +124,13 @@ public final class RootFileSystem implements FileSystem {
         return names == null ? Collections.<String>emptyList() : Arrays.asList(names);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, FileAttributes> getDirectoryEntriesWithAttributes(VirtualFile mountPoint, VirtualFile target) {
+        return RealFileSystem.readDirectoryEntriesWithAttributes(getFile(mountPoint, target));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,187 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.vfs.VFSUtils;
+
+/**
+ * A read-only seekable channel over a file which can only be read as a stream.  Seeking forwards skips through the
+ * current stream; seeking backwards opens the stream again, so random access is possible but not cheap.
+ */
+final class StreamChannel implements SeekableByteChannel {
+
+    private final Callable<InputStream> opener;
+    private final long size;
+    private final Lock lock = new ReentrantLock();
+    private InputStream stream;
+    private long streamPosition;
+    private long position;
+    private byte[] transfer;
+    private volatile boolean open = true;
+
+    /**
+     * Create a new instance.
+     *
+     * @param opener the opener of a new stream, positioned at the start of the file
+     * @param stream the initial stream, positioned at the start of the file
+     * @param size   the size of the file
+     */
+    StreamChannel(Callable<InputStream> opener, InputStream stream, long size) {
+        this.opener = opener;
+        this.stream = stream;
+        this.size = size;
+    }
+
+    public int read(ByteBuffer dst) throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            if (!dst.hasRemaining()) {
+                return 0;
+            }
+            final InputStream stream = seek();
+            if (stream == null) {
+                return -1;
+            }
+            final int n;
+            if (dst.hasArray()) {
+                n = stream.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                if (n > 0) {
+                    dst.position(dst.position() + n);
+                }
+            } else {
+                if (transfer == null) {
+                    transfer = new byte[8192];
+                }
+                n = stream.read(transfer, 0, Math.min(transfer.length, dst.remaining()));
+                if (n > 0) {
+                    dst.put(transfer, 0, n);
+                }
+            }
+            if (n > 0) {
+                position += n;
+                streamPosition += n;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get a stream positioned at the channel position, or {@code null} if the position is beyond the end of the file.
+     */
+    private InputStream seek() throws IOException {
+        if (stream != null && streamPosition > position) {
+            VFSUtils.safeClose(stream);
+            stream = null;
+        }
+        if (stream == null) {
+            try {
+                stream = opener.call();
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            streamPosition = 0L;
+        }
+        while (streamPosition < position) {
+            final long skipped = stream.skip(position - streamPosition);
+            if (skipped > 0L) {
+                streamPosition += skipped;
+            } else if (stream.read() == -1) {
+                return null;
+            } else {
+                streamPosition++;
+            }
+        }
+        return stream;
+    }
+
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    public long position() throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            return position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        if (newPosition < 0L) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        lock.lock();
+        try {
+            ensureOpen();
+            position = newPosition;
+            return this;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            open = false;
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
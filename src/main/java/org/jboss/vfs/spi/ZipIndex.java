@@ -0,0 +1,1044 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+import org.jboss.vfs.VirtualFile;
+
+/**
+ * An immutable, array-based index of the contents of a zip archive.
+ * <p/>
+ * Every file and directory of the archive is a <em>node</em>, identified by an {@code int}.  The root of the archive
+ * is node {@link #ROOT}.  The children of each directory occupy a contiguous range of node numbers and are sorted by
+ * name, so a child is located by a binary search over the name table.  Entry sizes, times, CRCs and locations are held
+ * in packed primitive arrays taken from the central directory; no {@code ZipEntry} instance is retained per entry.
+ * <p/>
+ * The index is read straight from a mapped view of the archive's central directory in a single pass, without
+ * allocating anything per entry other than the names of new nodes.
+ */
+final class ZipIndex {
+
+    /**
+     * The node number of the archive root.
+     */
+    static final int ROOT = 0;
+
+    /**
+     * The value returned by lookups which do not find a node.
+     */
+    static final int NOT_FOUND = -1;
+
+    /**
+     * The compression method recorded for encrypted entries, which cannot be read.
+     */
+    static final int METHOD_ENCRYPTED = -1;
+
+    private static final int LOCSIG = 0x04034b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int ZIP64_ENDSIG = 0x06064b50;
+    private static final int ZIP64_LOCSIG = 0x07064b50;
+    private static final int CENHDR = 46;
+    private static final int ENDHDR = 22;
+    private static final int ZIP64_LOCHDR = 20;
+    private static final int ZIP64_ENDHDR = 56;
+    private static final int LOCHDR = 30;
+    private static final int ZIP64_MAGICCOUNT = 0xFFFF;
+    private static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    // times which are still in MS-DOS format are tagged with this bit; it is never set in a real time in milliseconds
+    private static final long DOS_TIME = 1L << 62;
+
+    private final String[] names;
+    private final int[] parents;
+    // the first child of each directory, or -1 for plain files
+    private final int[] childStarts;
+    private final int[] childCounts;
+    private final long[] sizes;
+    private final long[] compressedSizes;
+    private final long[] times;
+    private final int[] crcs;
+    private final long[] offsets;
+    private final short[] methods;
+    // the few entries whose original name differs from their canonical path (e.g. a leading or doubled slash)
+    private final Map<Integer, String> entryNames;
+    // the hash of each node's path relative to the root, computed as VirtualFile computes its hash code
+    private final int[] relativeHashes;
+    // open-addressed table of node + 1, keyed by relative hash
+    private final int[] hashTable;
+
+    private ZipIndex(String[] names, int[] parents, int[] childStarts, int[] childCounts, long[] sizes, long[] compressedSizes, long[] times, int[] crcs, long[] offsets, short[] methods, Map<Integer, String> entryNames) {
+        this.names = names;
+        this.parents = parents;
+        this.childStarts = childStarts;
+        this.childCounts = childCounts;
+        this.sizes = sizes;
+        this.compressedSizes = compressedSizes;
+        this.times = times;
+        this.crcs = crcs;
+        this.offsets = offsets;
+        this.methods = methods;
+        this.entryNames = entryNames;
+        final int count = names.length;
+        final int[] relativeHashes = new int[count];
+        final int[] hashTable = new int[Integer.highestOneBit(Math.max(count, 2) - 1) << 2];
+        final int mask = hashTable.length - 1;
+        // parents always precede their children, so a single forward pass suffices
+        for (int node = 1; node < count; node++) {
+            final int relativeHash = 31 * relativeHashes[parents[node]] + names[node].hashCode();
+            relativeHashes[node] = relativeHash;
+            int idx = mix(relativeHash) & mask;
+            while (hashTable[idx] != 0) {
+                idx = idx + 1 & mask;
+            }
+            hashTable[idx] = node + 1;
+        }
+        this.relativeHashes = relativeHashes;
+        this.hashTable = hashTable;
+    }
+
+    /**
+     * Get the number of nodes in this index, including the root.
+     *
+     * @return the node count
+     */
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * Get the simple name of a node.
+     *
+     * @param node the node
+     * @return the simple name
+     */
+    String getName(int node) {
+        return names[node];
+    }
+
+    /**
+     * Get the parent of a node.
+     *
+     * @param node the node
+     * @return the parent node, or {@link #NOT_FOUND} for the root
+     */
+    int getParent(int node) {
+        return parents[node];
+    }
+
+    /**
+     * Determine whether a node is a directory.
+     *
+     * @param node the node
+     * @return {@code true} if it is a directory
+     */
+    boolean isDirectory(int node) {
+        return childStarts[node] != -1;
+    }
+
+    /**
+     * Get the uncompressed size of a file node.
+     *
+     * @param node the node
+     * @return the size, or 0 for a directory
+     */
+    long getSize(int node) {
+        return sizes[node];
+    }
+
+    /**
+     * Get the compressed size of a file node.
+     *
+     * @param node the node
+     * @return the compressed size, or 0 for a directory
+     */
+    long getCompressedSize(int node) {
+        return compressedSizes[node];
+    }
+
+    /**
+     * Get the modification time of a file node, as {@link java.util.zip.ZipEntry#getTime()} would report it.
+     *
+     * @param node the node
+     * @return the time in milliseconds, or -1 if it is not known
+     */
+    long getTime(int node) {
+        final long time = times[node];
+        return (time & DOS_TIME) != 0L && time > 0L ? dosToJavaTime(time & ZIP64_MAGICVAL) : time;
+    }
+
+    /**
+     * Get the CRC-32 of a file node.
+     *
+     * @param node the node
+     * @return the CRC
+     */
+    int getCrc(int node) {
+        return crcs[node];
+    }
+
+    /**
+     * Get the compression method of a file node.
+     *
+     * @param node the node
+     * @return the method, or {@link #METHOD_ENCRYPTED} if the entry is encrypted
+     */
+    int getMethod(int node) {
+        return methods[node];
+    }
+
+    /**
+     * Get the archive position of the local header of a file node.
+     *
+     * @param node the node
+     * @return the position
+     */
+    long getLocalHeaderOffset(int node) {
+        return offsets[node];
+    }
+
+    /**
+     * Get the archive position of the data of a file node, by reading its local header.
+     *
+     * @param source the archive
+     * @param node   the node
+     * @return the position
+     * @throws IOException if the local header cannot be read
+     */
+    long getDataOffset(ZipSource source, int node) throws IOException {
+        final long offset = offsets[node];
+        final ByteBuffer loc = ByteBuffer.allocate(LOCHDR).order(ByteOrder.LITTLE_ENDIAN);
+        source.readFully(loc, offset);
+        if (loc.getInt(0) != LOCSIG) {
+            throw new ZipException("invalid LOC header (bad signature)");
+        }
+        return offset + LOCHDR + (loc.getShort(26) & 0xffff) + (loc.getShort(28) & 0xffff);
+    }
+
+    /**
+     * Get the full name of the archive entry which backs a node.
+     *
+     * @param node the node
+     * @return the entry name
+     */
+    String getEntryName(int node) {
+        final String entryName = entryNames.get(Integer.valueOf(node));
+        if (entryName != null) {
+            return entryName;
+        }
+        final StringBuilder b = new StringBuilder();
+        appendPath(node, b);
+        if (isDirectory(node)) {
+            b.append('/');
+        }
+        return b.toString();
+    }
+
+    private void appendPath(int node, StringBuilder b) {
+        final int parent = parents[node];
+        if (parent != ROOT && parent != NOT_FOUND) {
+            appendPath(parent, b);
+            b.append('/');
+        }
+        b.append(names[node]);
+    }
+
+    /**
+     * Find the child of a directory node with the given name.
+     *
+     * @param node the directory node
+     * @param name the child name
+     * @return the child node, or {@link #NOT_FOUND} if there is none
+     */
+    int getChild(int node, String name) {
+        int low = childStarts[node];
+        if (low == -1) {
+            return NOT_FOUND;
+        }
+        int high = low + childCounts[node] - 1;
+        while (low <= high) {
+            final int mid = low + high >>> 1;
+            final int cmp = names[mid].compareTo(name);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Get the first child of a directory node.  The children of a directory are numbered consecutively.
+     *
+     * @param node the directory node
+     * @return the first child, or -1 if the node is not a directory
+     */
+    int getFirstChild(int node) {
+        return childStarts[node];
+    }
+
+    /**
+     * Get the number of children of a directory node.
+     *
+     * @param node the directory node
+     * @return the child count
+     */
+    int getChildCount(int node) {
+        return childCounts[node];
+    }
+
+    /**
+     * Get the names of the children of a node.
+     *
+     * @param node the node
+     * @return the child names, empty if the node is not a directory
+     */
+    List<String> getChildNames(int node) {
+        final int start = childStarts[node];
+        if (start == -1) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(names).subList(start, start + childCounts[node]));
+    }
+
+    /**
+     * Find the node which corresponds to a virtual file.
+     * <p/>
+     * A virtual file's hash code is built from its parent's as {@code 31 * parent + name.hashCode()}, so the hash of
+     * the target can be split into the contribution of the mount point and that of the path below it.  The latter is
+     * what each node's relative hash records, which lets the target be resolved with a single probe of the hash table
+     * followed by a name comparison up the chain, without creating a path string or recursing.
+     *
+     * @param mountPoint the mount point of the archive
+     * @param target     the virtual file
+     * @return the node, or {@link #NOT_FOUND} if there is none
+     */
+    int find(VirtualFile mountPoint, VirtualFile target) {
+        final int mountHash = mountPoint.hashCode();
+        int depth = 0;
+        int multiplier = 1;
+        VirtualFile current = target;
+        while (current.hashCode() != mountHash || !current.equals(mountPoint)) {
+            current = current.getParent();
+            if (current == null) {
+                return NOT_FOUND;
+            }
+            depth++;
+            multiplier *= 31;
+        }
+        if (depth == 0) {
+            return ROOT;
+        }
+        final int relativeHash = target.hashCode() - multiplier * mountHash;
+        final int[] table = hashTable;
+        final int mask = table.length - 1;
+        for (int idx = mix(relativeHash) & mask;; idx = idx + 1 & mask) {
+            final int entry = table[idx];
+            if (entry == 0) {
+                return NOT_FOUND;
+            }
+            final int node = entry - 1;
+            if (relativeHashes[node] == relativeHash && matches(node, target, depth)) {
+                return node;
+            }
+        }
+    }
+
+    private boolean matches(int node, VirtualFile target, int depth) {
+        VirtualFile current = target;
+        for (int i = 0; i < depth; i++) {
+            if (node <= ROOT || !names[node].equals(current.getName())) {
+                return false;
+            }
+            node = parents[node];
+            current = current.getParent();
+        }
+        return node == ROOT;
+    }
+
+    private static int mix(int hash) {
+        final int h = hash * 0x9E3779B9;
+        return h ^ h >>> 16;
+    }
+
+    /**
+     * Determine whether the archive is signed, in which case its contents should be read through a {@link
+     * java.util.jar.JarFile} so that they are verified.
+     *
+     * @return {@code true} if the archive contains a signature file
+     */
+    boolean isSigned() {
+        final int metaInf = getChild(ROOT, "META-INF");
+        if (metaInf == NOT_FOUND || !isDirectory(metaInf)) {
+            return false;
+        }
+        final int start = childStarts[metaInf];
+        for (int i = start; i < start + childCounts[metaInf]; i++) {
+            if (!isDirectory(i) && names[i].regionMatches(true, names[i].length() - 3, ".SF", 0, 3)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long dosToJavaTime(long dtime) {
+        final int year = (int) ((dtime >> 25 & 0x7f) + 1980);
+        final int month = (int) (dtime >> 21 & 0x0f);
+        final int day = (int) (dtime >> 16 & 0x1f);
+        final int hour = (int) (dtime >> 11 & 0x1f);
+        final int minute = (int) (dtime >> 5 & 0x3f);
+        final int second = (int) (dtime << 1 & 0x3e);
+        if (month > 0 && month < 13 && day > 0 && hour < 24 && minute < 60 && second < 60) {
+            try {
+                final LocalDateTime ldt = LocalDateTime.of(year, month, day, hour, minute, second);
+                return ldt.toEpochSecond(ZoneId.systemDefault().getRules().getOffset(ldt)) * 1000L;
+            } catch (DateTimeException ignored) {
+                // fall through to the lenient conversion, as java.util.zip does
+            }
+        }
+        return new Date(year - 1900, month - 1, day, hour, minute, second).getTime();
+    }
+
+    /**
+     * Read the index of a zip archive from its central directory.
+     *
+     * @param source the archive
+     * @return the index
+     * @throws IOException if the archive cannot be read or is not a valid zip archive
+     */
+    static ZipIndex read(ZipSource source) throws IOException {
+        return read(CentralDirectory.locate(source));
+    }
+
+    /**
+     * Build the index of a zip archive from its already located central directory.
+     *
+     * @param directory the central directory
+     * @return the index
+     * @throws ZipException if the central directory is not valid
+     */
+    static ZipIndex read(CentralDirectory directory) throws ZipException {
+        final ByteBuffer cen = directory.getBuffer();
+        final Builder builder = new Builder(directory.total);
+        int pos = 0;
+        for (int i = 0; i < directory.total; i++) {
+            pos = builder.add(cen, pos, directory.locAdjust);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Write this index in the form read by {@link #readFrom(ByteBuffer)}.
+     *
+     * @param out the destination
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo(DataOutput out) throws IOException {
+        final int count = names.length;
+        out.writeInt(count);
+        for (int node = 0; node < count; node++) {
+            writeString(out, names[node]);
+        }
+        for (int node = 0; node < count; node++) {
+            out.writeInt(parents[node]);
+            out.writeInt(childStarts[node]);
+            out.writeInt(childCounts[node]);
+            out.writeLong(sizes[node]);
+            out.writeLong(compressedSizes[node]);
+            out.writeLong(times[node]);
+            out.writeInt(crcs[node]);
+            out.writeLong(offsets[node]);
+            out.writeShort(methods[node]);
+        }
+        out.writeInt(entryNames.size());
+        for (Map.Entry<Integer, String> entry : entryNames.entrySet()) {
+            out.writeInt(entry.getKey().intValue());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Read an index written by {@link #writeTo(DataOutput)}, starting at the buffer's position.
+     *
+     * @param buffer the buffer
+     * @return the index
+     * @throws IOException if the buffer does not hold a valid index
+     */
+    static ZipIndex readFrom(ByteBuffer buffer) throws IOException {
+        try {
+            final int count = buffer.getInt();
+            if (count < 1 || count > buffer.remaining()) {
+                throw new StreamCorruptedException("Invalid node count " + count);
+            }
+            final String[] names = new String[count];
+            for (int node = 0; node < count; node++) {
+                names[node] = readString(buffer);
+            }
+            final int[] parents = new int[count];
+            final int[] childStarts = new int[count];
+            final int[] childCounts = new int[count];
+            final long[] sizes = new long[count];
+            final long[] compressedSizes = new long[count];
+            final long[] times = new long[count];
+            final int[] crcs = new int[count];
+            final long[] offsets = new long[count];
+            final short[] methods = new short[count];
+            for (int node = 0; node < count; node++) {
+                final int parent = buffer.getInt();
+                final int childStart = buffer.getInt();
+                final int childCount = buffer.getInt();
+                // parents precede their children, and child ranges follow their parent
+                final boolean validParent = node == ROOT ? parent == NOT_FOUND : parent >= 0 && parent < node;
+                final boolean validChildren = childStart == -1 ? childCount == 0 : childStart > node && childCount >= 0 && childStart + childCount <= count;
+                if (!validParent || !validChildren) {
+                    throw new StreamCorruptedException("Invalid node " + node);
+                }
+                parents[node] = parent;
+                childStarts[node] = childStart;
+                childCounts[node] = childCount;
+                sizes[node] = buffer.getLong();
+                compressedSizes[node] = buffer.getLong();
+                times[node] = buffer.getLong();
+                crcs[node] = buffer.getInt();
+                offsets[node] = buffer.getLong();
+                methods[node] = buffer.getShort();
+            }
+            final int entryNameCount = buffer.getInt();
+            final Map<Integer, String> entryNames;
+            if (entryNameCount == 0) {
+                entryNames = Collections.emptyMap();
+            } else {
+                entryNames = new HashMap<Integer, String>();
+                for (int i = 0; i < entryNameCount; i++) {
+                    final int node = buffer.getInt();
+                    if (node < 0 || node >= count) {
+                        throw new StreamCorruptedException("Invalid node " + node);
+                    }
+                    entryNames.put(Integer.valueOf(node), readString(buffer));
+                }
+            }
+            return new ZipIndex(names, parents, childStarts, childCounts, sizes, compressedSizes, times, crcs, offsets, methods, entryNames);
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    }
+
+    private static void writeString(DataOutput out, String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final int length = buffer.getShort() & 0xffff;
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The location of the central directory of an archive.
+     */
+    static final class CentralDirectory {
+        private final ByteBuffer buffer;
+        private final int total;
+        private final long locAdjust;
+
+        private CentralDirectory(ByteBuffer buffer, int total, long locAdjust) {
+            this.buffer = buffer;
+            this.total = total;
+            this.locAdjust = locAdjust;
+        }
+
+        ByteBuffer getBuffer() {
+            return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Get the CRC-32 of the central directory, which changes whenever any entry of the archive is added, removed,
+         * renamed or rewritten.
+         *
+         * @return the checksum
+         */
+        int checksum() {
+            final CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            return (int) crc.getValue();
+        }
+
+        /**
+         * Locate and map the central directory of an archive.
+         *
+         * @param source the archive
+         * @return the central directory
+         * @throws IOException if the archive cannot be read or is not a valid zip archive
+         */
+        static CentralDirectory locate(ZipSource source) throws IOException {
+            final long size = source.size();
+            // locate the end header by scanning the tail of the archive backwards
+            final int tailLength = (int) Math.min(size, ENDHDR + MAX_COMMENT + ZIP64_LOCHDR);
+            final long tailStart = size - tailLength;
+            final ByteBuffer tail = source.map(tailStart, tailLength);
+            long cenPos = -1L;
+            long cenLen = 0L;
+            long cenOff = 0L;
+            long total = 0L;
+            for (int i = tailLength - ENDHDR; i >= 0; i--) {
+                if (tail.getInt(i) != ENDSIG) {
+                    continue;
+                }
+                final long endPos = tailStart + i;
+                total = tail.getShort(i + 10) & 0xffff;
+                cenLen = tail.getInt(i + 12) & ZIP64_MAGICVAL;
+                cenOff = tail.getInt(i + 16) & ZIP64_MAGICVAL;
+                final int commentLength = tail.getShort(i + 20) & 0xffff;
+                // the central directory ends where the zip64 end record (if any) or the end header begins
+                long centralEnd = endPos;
+                if ((total == ZIP64_MAGICCOUNT || cenLen == ZIP64_MAGICVAL || cenOff == ZIP64_MAGICVAL) && i >= ZIP64_LOCHDR && tail.getInt(i - ZIP64_LOCHDR) == ZIP64_LOCSIG) {
+                    final long end64Pos = tail.getLong(i - ZIP64_LOCHDR + 8);
+                    if (end64Pos >= 0L && end64Pos + ZIP64_ENDHDR <= endPos) {
+                        final ByteBuffer end64 = source.map(end64Pos, ZIP64_ENDHDR);
+                        if (end64.getInt(0) == ZIP64_ENDSIG) {
+                            total = end64.getLong(32);
+                            cenLen = end64.getLong(40);
+                            cenOff = end64.getLong(48);
+                            centralEnd = end64Pos;
+                        }
+                    }
+                }
+                final long candidate = centralEnd - cenLen;
+                if (candidate < 0L || candidate - cenOff < 0L) {
+                    continue;
+                }
+                if (endPos + ENDHDR + commentLength != size) {
+                    // the comment length does not match; only accept this header if it points at a central directory
+                    final ByteBuffer sig = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                    if (total > 0 && (source.read(sig, candidate) != 4 || sig.getInt(0) != CENSIG)) {
+                        continue;
+                    }
+                }
+                cenPos = candidate;
+                break;
+            }
+            if (cenPos == -1L) {
+                throw new ZipException("zip END header not found");
+            }
+            if (cenLen > Integer.MAX_VALUE || total > Integer.MAX_VALUE) {
+                throw new ZipException("invalid END header (central directory too large)");
+            }
+            // archives with leading data (e.g. self-extracting ones) record offsets relative to the start of the zip data
+            final ByteBuffer cen = cenLen == 0L ? ByteBuffer.allocate(0) : source.map(cenPos, (int) cenLen);
+            return new CentralDirectory(cen, (int) total, cenPos - cenOff);
+        }
+    }
+
+    /**
+     * A single-use builder which reads central directory records into growable primitive tables, and then lays them
+     * out breadth-first so that the children of every directory are contiguous and sorted.
+     */
+    private static final class Builder {
+        private final byte[] nameBytes = new byte[0x10000];
+        private final int[] segmentStarts = new int[0x8000];
+        private final int[] segmentEnds = new int[0x8000];
+        private final Map<Integer, String> entryNames = new HashMap<Integer, String>();
+        private String[] names;
+        private int[] parents;
+        private int[] firstChildren;
+        private int[] nextSiblings;
+        private long[] sizes;
+        private long[] compressedSizes;
+        private long[] times;
+        private int[] crcs;
+        private long[] offsets;
+        private short[] methods;
+        // open-addressed (parent, name) table of node + 1
+        private int[] table;
+        private int count;
+
+        Builder(int entries) {
+            final int capacity = Math.max(16, entries + (entries >> 2));
+            names = new String[capacity];
+            parents = new int[capacity];
+            firstChildren = new int[capacity];
+            nextSiblings = new int[capacity];
+            sizes = new long[capacity];
+            compressedSizes = new long[capacity];
+            times = new long[capacity];
+            crcs = new int[capacity];
+            offsets = new long[capacity];
+            methods = new short[capacity];
+            table = new int[Integer.highestOneBit(capacity) << 2];
+            names[ROOT] = "";
+            parents[ROOT] = NOT_FOUND;
+            firstChildren[ROOT] = NOT_FOUND;
+            times[ROOT] = -1L;
+            count = 1;
+        }
+
+        /**
+         * Add the central directory record at the given position.  Entries with "." or ".." segments are ignored, as
+         * are entries which would be nested under a plain file; if an entry name occurs more than once, the first
+         * occurrence wins.
+         *
+         * @return the position of the next record
+         */
+        int add(ByteBuffer cen, int pos, long locAdjust) throws ZipException {
+            if (pos + CENHDR > cen.limit() || cen.getInt(pos) != CENSIG) {
+                throw new ZipException("invalid CEN header (bad signature)");
+            }
+            final int flag = cen.getShort(pos + 8) & 0xffff;
+            final int method = cen.getShort(pos + 10) & 0xffff;
+            final long dosTime = cen.getInt(pos + 12) & ZIP64_MAGICVAL;
+            final int crc = cen.getInt(pos + 16);
+            long compressedSize = cen.getInt(pos + 20) & ZIP64_MAGICVAL;
+            long size = cen.getInt(pos + 24) & ZIP64_MAGICVAL;
+            final int nameLength = cen.getShort(pos + 28) & 0xffff;
+            final int extraLength = cen.getShort(pos + 30) & 0xffff;
+            final int commentLength = cen.getShort(pos + 32) & 0xffff;
+            long offset = cen.getInt(pos + 42) & ZIP64_MAGICVAL;
+            final int next = pos + CENHDR + nameLength + extraLength + commentLength;
+            if (next > cen.limit()) {
+                throw new ZipException("invalid CEN header (bad header size)");
+            }
+            long time = DOS_TIME | dosTime;
+            // extra fields: zip64 sizes and offset, and the more precise NTFS or extended timestamps
+            int e = pos + CENHDR + nameLength;
+            final int extraEnd = e + extraLength;
+            while (e + 4 <= extraEnd) {
+                final int tag = cen.getShort(e) & 0xffff;
+                final int dataSize = cen.getShort(e + 2) & 0xffff;
+                final int data = e + 4;
+                if (data + dataSize > extraEnd) {
+                    break;
+                }
+                if (tag == 0x0001) {
+                    int d = data;
+                    if (size == ZIP64_MAGICVAL && d + 8 <= data + dataSize) {
+                        size = cen.getLong(d);
+                        d += 8;
+                    }
+                    if (compressedSize == ZIP64_MAGICVAL && d + 8 <= data + dataSize) {
+                        compressedSize = cen.getLong(d);
+                        d += 8;
+                    }
+                    if (offset == ZIP64_MAGICVAL && d + 8 <= data + dataSize) {
+                        offset = cen.getLong(d);
+                    }
+                } else if (tag == 0x000a && dataSize >= 32) {
+                    // NTFS: the modification time is the first attribute of tag 1
+                    if ((cen.getShort(data + 4) & 0xffff) == 0x0001 && (cen.getShort(data + 6) & 0xffff) == 24) {
+                        time = Math.floorDiv(cen.getLong(data + 8), 10000L) - 11644473600000L;
+                    }
+                } else if (tag == 0x5455 && dataSize >= 5) {
+                    if ((cen.get(data) & 0x1) != 0) {
+                        time = cen.getInt(data + 1) * 1000L;
+                    }
+                }
+                e = data + dataSize;
+            }
+            for (int i = 0; i < nameLength; i++) {
+                nameBytes[i] = cen.get(pos + CENHDR + i);
+            }
+            addEntry(nameLength, size, compressedSize, time, crc, offset + locAdjust, (flag & 1) != 0 ? METHOD_ENCRYPTED : method);
+            return next;
+        }
+
+        private void addEntry(int nameLength, long size, long compressedSize, long time, int crc, long offset, int method) {
+            final byte[] nameBytes = this.nameBytes;
+            // split the name into segments, rejecting "." and ".."
+            int segments = 0;
+            boolean canonical = nameLength > 0 && nameBytes[0] != '/';
+            int start = -1;
+            for (int i = 0; i <= nameLength; i++) {
+                final byte b = i == nameLength ? (byte) '/' : nameBytes[i];
+                if (b == '/' || b == '\\') {
+                    if (b == '\\') {
+                        canonical = false;
+                    }
+                    if (start == -1) {
+                        if (i > 0 && i < nameLength) {
+                            canonical = false;
+                        }
+                        continue;
+                    }
+                    final int length = i - start;
+                    if (nameBytes[start] == '.' && (length == 1 || length == 2 && nameBytes[start + 1] == '.')) {
+                        // invalid file name
+                        return;
+                    }
+                    segmentStarts[segments] = start;
+                    segmentEnds[segments++] = i;
+                    start = -1;
+                } else if (start == -1) {
+                    start = i;
+                }
+            }
+            final boolean isDirectory = nameLength > 0 && nameBytes[nameLength - 1] == '/';
+            int node = ROOT;
+            for (int s = 0; s < segments; s++) {
+                if (firstChildren[node] == -2) {
+                    // todo - log bad zip entry
+                    return;
+                }
+                final boolean last = s == segments - 1;
+                int child = findChild(node, segmentStarts[s], segmentEnds[s]);
+                if (child == NOT_FOUND) {
+                    child = addNode(node, segmentStarts[s], segmentEnds[s], !last || isDirectory);
+                    if (last && !isDirectory) {
+                        sizes[child] = size;
+                        compressedSizes[child] = compressedSize;
+                        times[child] = time;
+                        crcs[child] = crc;
+                        offsets[child] = offset;
+                        methods[child] = (short) method;
+                        if (!canonical) {
+                            entryNames.put(Integer.valueOf(child), new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8));
+                        }
+                    }
+                }
+                node = child;
+            }
+        }
+
+        private static boolean isAscii(byte[] bytes, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (bytes[i] < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int hash(int parent, int nameHash) {
+            final int h = (parent * 0x9E3779B9) ^ nameHash;
+            return h ^ h >>> 16;
+        }
+
+        private int findChild(int parent, int start, int end) {
+            final byte[] nameBytes = this.nameBytes;
+            final String decoded;
+            final int nameHash;
+            if (isAscii(nameBytes, start, end)) {
+                decoded = null;
+                int h = 0;
+                for (int i = start; i < end; i++) {
+                    h = 31 * h + nameBytes[i];
+                }
+                nameHash = h;
+            } else {
+                decoded = new String(nameBytes, start, end - start, StandardCharsets.UTF_8);
+                nameHash = decoded.hashCode();
+            }
+            final int[] table = this.table;
+            final int mask = table.length - 1;
+            for (int idx = hash(parent, nameHash) & mask;; idx = idx + 1 & mask) {
+                final int entry = table[idx];
+                if (entry == 0) {
+                    return NOT_FOUND;
+                }
+                final int node = entry - 1;
+                if (parents[node] == parent && nameEquals(names[node], nameHash, decoded, start, end)) {
+                    return node;
+                }
+            }
+        }
+
+        private boolean nameEquals(String name, int nameHash, String decoded, int start, int end) {
+            if (name.hashCode() != nameHash) {
+                return false;
+            }
+            if (decoded != null) {
+                return decoded.equals(name);
+            }
+            final int length = end - start;
+            if (name.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (name.charAt(i) != nameBytes[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int addNode(int parent, int start, int end, boolean isDirectory) {
+            if (count == names.length) {
+                grow();
+            }
+            final int node = count++;
+            final String name = isAscii(nameBytes, start, end) ? new String(nameBytes, start, end - start, StandardCharsets.ISO_8859_1) : new String(nameBytes, start, end - start, StandardCharsets.UTF_8);
+            names[node] = name;
+            parents[node] = parent;
+            // -1 marks an empty directory and -2 a plain file
+            firstChildren[node] = isDirectory ? NOT_FOUND : -2;
+            nextSiblings[node] = firstChildren[parent];
+            firstChildren[parent] = node;
+            times[node] = -1L;
+            if (count << 1 > table.length) {
+                rehash(table.length << 1);
+            } else {
+                insert(table, node);
+            }
+            return node;
+        }
+
+        private void insert(int[] table, int node) {
+            final int mask = table.length - 1;
+            int idx = hash(parents[node], names[node].hashCode()) & mask;
+            while (table[idx] != 0) {
+                idx = idx + 1 & mask;
+            }
+            table[idx] = node + 1;
+        }
+
+        private void rehash(int length) {
+            final int[] table = new int[length];
+            for (int node = 1; node < count; node++) {
+                insert(table, node);
+            }
+            this.table = table;
+        }
+
+        private void grow() {
+            final int capacity = names.length << 1;
+            names = Arrays.copyOf(names, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            compressedSizes = Arrays.copyOf(compressedSizes, capacity);
+            times = Arrays.copyOf(times, capacity);
+            crcs = Arrays.copyOf(crcs, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            methods = Arrays.copyOf(methods, capacity);
+        }
+
+        ZipIndex build() {
+            final int count = this.count;
+            // breadth-first order; the position of a node in this queue is its final node number
+            final int[] order = new int[count];
+            final int[] scratch = new int[count];
+            final int[] newParents = new int[count];
+            final int[] childStarts = new int[count];
+            final int[] childCounts = new int[count];
+            order[0] = ROOT;
+            newParents[0] = NOT_FOUND;
+            int tail = 1;
+            for (int head = 0; head < count; head++) {
+                final int old = order[head];
+                int child = firstChildren[old];
+                if (child == -2) {
+                    childStarts[head] = -1;
+                    continue;
+                }
+                final int start = tail;
+                while (child != NOT_FOUND) {
+                    newParents[tail] = head;
+                    order[tail++] = child;
+                    child = nextSiblings[child];
+                }
+                sortByName(order, scratch, start, tail);
+                childStarts[head] = start;
+                childCounts[head] = tail - start;
+            }
+            final String[] names = new String[count];
+            final long[] sizes = new long[count];
+            final long[] compressedSizes = new long[count];
+            final long[] times = new long[count];
+            final int[] crcs = new int[count];
+            final long[] offsets = new long[count];
+            final short[] methods = new short[count];
+            final Map<Integer, String> entryNames = new HashMap<Integer, String>();
+            for (int node = 0; node < count; node++) {
+                final int old = order[node];
+                names[node] = this.names[old];
+                sizes[node] = this.sizes[old];
+                compressedSizes[node] = this.compressedSizes[old];
+                times[node] = this.times[old];
+                crcs[node] = this.crcs[old];
+                offsets[node] = this.offsets[old];
+                methods[node] = this.methods[old];
+                if (!this.entryNames.isEmpty()) {
+                    final String entryName = this.entryNames.get(Integer.valueOf(old));
+                    if (entryName != null) {
+                        entryNames.put(Integer.valueOf(node), entryName);
+                    }
+                }
+            }
+            return new ZipIndex(names, newParents, childStarts, childCounts, sizes, compressedSizes, times, crcs, offsets, methods, entryNames.isEmpty() ? Collections.<Integer, String>emptyMap() : entryNames);
+        }
+
+        private void sortByName(int[] a, int[] scratch, int from, int to) {
+            if (to - from < 12) {
+                for (int i = from + 1; i < to; i++) {
+                    final int v = a[i];
+                    final String name = names[v];
+                    int j = i - 1;
+                    while (j >= from && names[a[j]].compareTo(name) > 0) {
+                        a[j + 1] = a[j];
+                        j--;
+                    }
+                    a[j + 1] = v;
+                }
+                return;
+            }
+            final int mid = from + to >>> 1;
+            sortByName(a, scratch, from, mid);
+            sortByName(a, scratch, mid, to);
+            if (names[a[mid - 1]].compareTo(names[a[mid]]) <= 0) {
+                return;
+            }
+            System.arraycopy(a, from, scratch, from, to - from);
+            int i = from;
+            int j = mid;
+            for (int k = from; k < to; k++) {
+                if (j >= to || i < mid && names[scratch[i]].compareTo(names[scratch[j]]) <= 0) {
+                    a[k] = scratch[i++];
+                } else {
+                    a[k] = scratch[j++];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.jboss.vfs.VFSLogger;
+
+/**
+ * A directory of serialized {@link ZipIndex} instances, which lets an unchanged archive be mounted again, for instance
+ * after a restart, without its central directory being parsed and laid out again.
+ * <p/>
+ * Each archive has one cache file, named after its canonical path.  The cache file records the canonical path, length,
+ * modification time and central directory checksum of the archive it was written for; if any of these no longer match,
+ * the file is stale and is replaced by a freshly built index.  Cache files are read through a memory map, and are
+ * written to a temporary file which is then renamed into place, so a reader never sees a partly written one.  Failing
+ * to read or write the cache never causes a mount to fail.
+ */
+final class ZipIndexCache {
+
+    private static final int MAGIC = 0x4a5a4958;
+    private static final int VERSION = 1;
+
+    private final File dir;
+
+    /**
+     * Create a new instance.
+     *
+     * @param dir the cache directory, which is created if needed
+     */
+    ZipIndexCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Get the index of an archive file, from the cache if it holds an up to date copy, or else by reading the archive
+     * and storing the result.
+     *
+     * @param archiveFile the archive file
+     * @param source      the archive contents
+     * @return the index
+     * @throws IOException if the archive cannot be read or is not a valid zip archive
+     */
+    ZipIndex getIndex(File archiveFile, ZipSource source) throws IOException {
+        final ZipIndex.CentralDirectory directory = ZipIndex.CentralDirectory.locate(source);
+        final String path = getCanonicalPath(archiveFile);
+        final long size = source.size();
+        final long lastModified = archiveFile.lastModified();
+        final int checksum = directory.checksum();
+        final File cacheFile = getCacheFile(path, archiveFile.getName());
+        if (cacheFile.isFile()) {
+            try {
+                final ZipIndex index = load(cacheFile, path, size, lastModified, checksum);
+                if (index != null) {
+                    VFSLogger.ROOT_LOGGER.tracef("Loaded cached index of %s from %s", archiveFile, cacheFile);
+                    return index;
+                }
+                VFSLogger.ROOT_LOGGER.tracef("Cached index %s of %s is stale", cacheFile, archiveFile);
+            } catch (IOException e) {
+                VFSLogger.ROOT_LOGGER.tracef(e, "Failed to load cached index %s of %s", cacheFile, archiveFile);
+            }
+        }
+        final ZipIndex index = ZipIndex.read(directory);
+        try {
+            store(cacheFile, path, size, lastModified, checksum, index);
+        } catch (IOException e) {
+            VFSLogger.ROOT_LOGGER.tracef(e, "Failed to store cached index %s of %s", cacheFile, archiveFile);
+        }
+        return index;
+    }
+
+    private File getCacheFile(String canonicalPath, String name) {
+        // differently located archives with the same name and path hash share a file, which the path check resolves
+        return new File(dir, name + "-" + Integer.toHexString(canonicalPath.hashCode()) + ".idx");
+    }
+
+    private static String getCanonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private static ZipIndex load(File cacheFile, String path, long size, long lastModified, int checksum) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            final byte[] pathBytes = new byte[buffer.getShort() & 0xffff];
+            buffer.get(pathBytes);
+            if (!path.equals(new String(pathBytes, StandardCharsets.UTF_8)) || buffer.getLong() != size || buffer.getLong() != lastModified || buffer.getInt() != checksum) {
+                return null;
+            }
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+        return ZipIndex.readFrom(buffer);
+    }
+
+    private void store(File cacheFile, String path, long size, long lastModified, int checksum, ZipIndex index) throws IOException {
+        dir.mkdirs();
+        final File tmp = File.createTempFile(cacheFile.getName(), ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                final byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(pathBytes.length);
+                out.write(pathBytes);
+                out.writeLong(size);
+                out.writeLong(lastModified);
+                out.writeInt(checksum);
+                index.writeTo(out);
+            }
+            try {
+                Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+}
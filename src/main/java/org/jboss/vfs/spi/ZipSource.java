@@ -0,0 +1,575 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.vfs.VFSMessages;
+
+/**
+ * The raw bytes of a zip archive, accessed by absolute position.  All methods are safe for concurrent use.
+ */
+abstract class ZipSource implements Closeable {
+
+    /**
+     * Get the length of the archive.
+     *
+     * @return the length in bytes
+     */
+    abstract long size();
+
+    /**
+     * Read bytes from the given position into a buffer, without affecting any shared position.
+     *
+     * @param dst      the destination buffer
+     * @param position the archive position
+     * @return the number of bytes read, or -1 at the end of the archive
+     * @throws IOException if an I/O error occurs
+     */
+    abstract int read(ByteBuffer dst, long position) throws IOException;
+
+    /**
+     * Get a read-only little-endian view of a region of the archive.
+     *
+     * @param position the archive position
+     * @param length   the length of the region
+     * @return the buffer
+     * @throws IOException if an I/O error occurs
+     */
+    abstract ByteBuffer map(long position, int length) throws IOException;
+
+    /**
+     * Get a read-only big-endian buffer holding a region of the archive, such as the contents of an entry stored without
+     * compression.  The default implementation reads the region into a new buffer of exactly its length.
+     *
+     * @param position the archive position
+     * @param length   the length of the region
+     * @return the buffer
+     * @throws IOException if an I/O error occurs or the archive is too short
+     */
+    ByteBuffer getContent(long position, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(buffer, position);
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Fill a buffer from the given position.
+     *
+     * @param dst      the destination buffer
+     * @param position the archive position
+     * @throws IOException if an I/O error occurs or the archive is too short
+     */
+    void readFully(ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            final int res = read(dst, position);
+            if (res == -1) {
+                throw new EOFException();
+            }
+            position += res;
+        }
+    }
+
+    /**
+     * Copy a region of the archive to a channel.  File-backed sources let the operating system move the bytes directly,
+     * where it can.
+     *
+     * @param position the archive position
+     * @param count    the number of bytes to copy
+     * @param target   the destination channel
+     * @throws IOException if an I/O error occurs or the archive is too short
+     */
+    void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, 8192L));
+        while (count > 0L) {
+            buffer.clear();
+            if (count < buffer.capacity()) {
+                buffer.limit((int) count);
+            }
+            final int res = read(buffer, position);
+            if (res == -1) {
+                throw new EOFException();
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            position += res;
+            count -= res;
+        }
+    }
+
+    /**
+     * Create a source for a region of this archive, such as an archive nested in it without compression.  The new
+     * source reads independently of this one, and must be closed separately.
+     *
+     * @param position the archive position
+     * @param length   the length of the region
+     * @return the source
+     * @throws IOException if an I/O error occurs or the archive is too short
+     */
+    abstract ZipSource slice(long position, long length) throws IOException;
+
+    /**
+     * Get the file which holds exactly this archive, if there is one.
+     *
+     * @return the file, or {@code null} if this archive is held in memory or is a region of a larger file
+     */
+    File getFile() {
+        return null;
+    }
+
+    /**
+     * Open a stream over a region of the archive.
+     *
+     * @param position the archive position
+     * @param length   the length of the region
+     * @return the stream
+     */
+    InputStream openStream(long position, long length) {
+        return new RegionInputStream(this, position, length);
+    }
+
+    /**
+     * Open a read-only seekable channel over a region of the archive.
+     *
+     * @param position the archive position
+     * @param length   the length of the region
+     * @return the channel
+     */
+    SeekableByteChannel openChannel(long position, long length) {
+        return new RegionChannel(this, position, length);
+    }
+
+    /**
+     * Create a source for a whole file.
+     *
+     * @param file the archive file
+     * @return the source
+     * @throws IOException if the file cannot be opened
+     */
+    static ZipSource of(File file) throws IOException {
+        return new FileSource(file);
+    }
+
+    /**
+     * Create a source for an archive held in memory.
+     *
+     * @param buffer the archive bytes, from position 0 to the limit; the buffer must not be modified afterwards
+     * @return the source
+     */
+    static ZipSource of(ByteBuffer buffer) {
+        return new BufferSource(buffer);
+    }
+
+    /**
+     * A source backed by a file, or by a region of one.  Positional reads are used throughout so that the channel can be
+     * shared between threads; if the channel is closed because some other reading thread was interrupted, it is
+     * transparently reopened.
+     */
+    static final class FileSource extends ZipSource {
+        private static final int MAP_THRESHOLD = 65536;
+
+        private final File file;
+        private final long base;
+        private final long size;
+        private final boolean whole;
+        private final Lock lock = new ReentrantLock();
+        private volatile FileChannel channel;
+        private volatile boolean closed;
+
+        FileSource(File file) throws IOException {
+            this.file = file;
+            final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.channel = channel;
+            base = 0L;
+            size = channel.size();
+            whole = true;
+        }
+
+        FileSource(File file, long base, long size) throws IOException {
+            this.file = file;
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.base = base;
+            this.size = size;
+            whole = false;
+        }
+
+        long size() {
+            return size;
+        }
+
+        File getFile() {
+            return whole ? file : null;
+        }
+
+        int read(ByteBuffer dst, long position) throws IOException {
+            if (position >= size) {
+                return -1;
+            }
+            final int limit = dst.limit();
+            if (dst.remaining() > size - position) {
+                dst.limit(dst.position() + (int) (size - position));
+            }
+            try {
+                for (;;) {
+                    final FileChannel channel = getChannel();
+                    try {
+                        return channel.read(dst, base + position);
+                    } catch (ClosedByInterruptException e) {
+                        throw e;
+                    } catch (ClosedChannelException e) {
+                        if (closed) {
+                            throw e;
+                        }
+                        // closed by an interrupt on some other thread; reopen and retry
+                    }
+                }
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        ByteBuffer map(long position, int length) throws IOException {
+            if (position + length > size) {
+                throw new EOFException();
+            }
+            for (;;) {
+                final FileChannel channel = getChannel();
+                try {
+                    return channel.map(FileChannel.MapMode.READ_ONLY, base + position, length).order(ByteOrder.LITTLE_ENDIAN);
+                } catch (ClosedByInterruptException e) {
+                    throw e;
+                } catch (ClosedChannelException e) {
+                    if (closed) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        ByteBuffer getContent(long position, int length) throws IOException {
+            // mapping costs more than a read for small regions
+            return length < MAP_THRESHOLD ? super.getContent(position, length) : map(position, length).order(ByteOrder.BIG_ENDIAN);
+        }
+
+        void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            if (position + count > size) {
+                throw new EOFException();
+            }
+            while (count > 0L) {
+                final FileChannel channel = getChannel();
+                final long res;
+                try {
+                    res = channel.transferTo(base + position, count, target);
+                    // the file may have been truncated since it was opened, and then nothing more is transferred
+                    if (res == 0L && base + position >= channel.size()) {
+                        throw new EOFException();
+                    }
+                } catch (ClosedByInterruptException e) {
+                    throw e;
+                } catch (ClosedChannelException e) {
+                    if (closed || !target.isOpen()) {
+                        throw e;
+                    }
+                    // our channel was closed by an interrupt on some other thread; reopen and retry
+                    continue;
+                }
+                position += res;
+                count -= res;
+            }
+        }
+
+        ZipSource slice(long position, long length) throws IOException {
+            if (position < 0L || length < 0L || position + length > size) {
+                throw new EOFException();
+            }
+            return new FileSource(file, base + position, length);
+        }
+
+        private FileChannel getChannel() throws IOException {
+            final FileChannel channel = this.channel;
+            if (channel.isOpen()) {
+                return channel;
+            }
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new ClosedChannelException();
+                }
+                FileChannel current = this.channel;
+                if (!current.isOpen()) {
+                    this.channel = current = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                }
+                return current;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void close() throws IOException {
+            lock.lock();
+            try {
+                closed = true;
+                channel.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public String toString() {
+            return whole ? file.toString() : file + "[" + base + "+" + size + "]";
+        }
+    }
+
+    /**
+     * A source backed by a buffer in memory.  Every access works on its own view of the buffer, so none of them share a
+     * position.
+     */
+    static final class BufferSource extends ZipSource {
+        private final ByteBuffer buffer;
+
+        BufferSource(ByteBuffer buffer) {
+            this.buffer = buffer.asReadOnlyBuffer();
+        }
+
+        long size() {
+            return buffer.limit();
+        }
+
+        int read(ByteBuffer dst, long position) {
+            if (position >= buffer.limit()) {
+                return -1;
+            }
+            final ByteBuffer src = buffer.duplicate();
+            src.position((int) position);
+            if (src.remaining() > dst.remaining()) {
+                src.limit(src.position() + dst.remaining());
+            }
+            final int count = src.remaining();
+            dst.put(src);
+            return count;
+        }
+
+        ByteBuffer map(long position, int length) {
+            final ByteBuffer src = buffer.duplicate();
+            src.position((int) position);
+            src.limit((int) position + length);
+            return src.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        ByteBuffer getContent(long position, int length) throws IOException {
+            if (position + length > buffer.limit()) {
+                throw new EOFException();
+            }
+            return map(position, length).order(ByteOrder.BIG_ENDIAN);
+        }
+
+        void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            if (position + count > buffer.limit()) {
+                throw new EOFException();
+            }
+            final ByteBuffer src = map(position, (int) count);
+            while (src.hasRemaining()) {
+                target.write(src);
+            }
+        }
+
+        ZipSource slice(long position, long length) throws IOException {
+            if (position < 0L || length < 0L || position + length > buffer.limit()) {
+                throw new EOFException();
+            }
+            return new BufferSource(map(position, (int) length));
+        }
+
+        public void close() {
+        }
+    }
+
+    private static final class RegionChannel implements SeekableByteChannel {
+        private final ZipSource source;
+        private final long base;
+        private final long size;
+        private final Lock lock = new ReentrantLock();
+        private long position;
+        private volatile boolean open = true;
+
+        RegionChannel(ZipSource source, long base, long size) {
+            this.source = source;
+            this.base = base;
+            this.size = size;
+        }
+
+        public int read(ByteBuffer dst) throws IOException {
+            lock.lock();
+            try {
+                ensureOpen();
+                if (position >= size) {
+                    return -1;
+                }
+                final int limit = dst.limit();
+                if (dst.remaining() > size - position) {
+                    dst.limit(dst.position() + (int) (size - position));
+                }
+                final int res;
+                try {
+                    res = source.read(dst, base + position);
+                } finally {
+                    dst.limit(limit);
+                }
+                if (res > 0) {
+                    position += res;
+                }
+                return res;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        public long position() throws IOException {
+            lock.lock();
+            try {
+                ensureOpen();
+                return position;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            if (newPosition < 0L) {
+                throw new IllegalArgumentException("Negative position");
+            }
+            lock.lock();
+            try {
+                ensureOpen();
+                position = newPosition;
+                return this;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public long size() throws IOException {
+            ensureOpen();
+            return size;
+        }
+
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        public void close() {
+            open = false;
+        }
+
+        private void ensureOpen() throws ClosedChannelException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+        }
+    }
+
+    private static final class RegionInputStream extends InputStream {
+        private final ZipSource source;
+        private final long end;
+        private final byte[] single = new byte[1];
+        private long position;
+        private long mark;
+        private volatile boolean closed;
+
+        RegionInputStream(ZipSource source, long position, long length) {
+            this.source = source;
+            this.position = mark = position;
+            end = position + length;
+        }
+
+        public int read() throws IOException {
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw VFSMessages.MESSAGES.streamIsClosed();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            final long remaining = end - position;
+            if (remaining <= 0L) {
+                return -1;
+            }
+            final int res = source.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (res > 0) {
+                position += res;
+            }
+            return res;
+        }
+
+        public long skip(long n) {
+            final long skipped = Math.max(0L, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        public boolean markSupported() {
+            return true;
+        }
+
+        public void mark(int readlimit) {
+            mark = position;
+        }
+
+        public void reset() {
+            position = mark;
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
+}
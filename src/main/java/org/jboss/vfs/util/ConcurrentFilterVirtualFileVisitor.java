@@ -0,0 +1,94 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.util;
+
+import static org.jboss.vfs.VFSMessages.MESSAGES;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.VirtualFileFilter;
+import org.jboss.vfs.VirtualFileFilterWithAttributes;
+import org.jboss.vfs.VisitorAttributes;
+
+/**
+ * A visitor based on a virtual file filter which may be called from several threads at once, such as during {@link
+ * VirtualFile#visitParallel(org.jboss.vfs.VirtualFileVisitor, java.util.concurrent.ForkJoinPool)}.  The filter itself
+ * must be thread-safe.
+ */
+public class ConcurrentFilterVirtualFileVisitor extends AbstractVirtualFileVisitor {
+
+    /**
+     * The filter
+     */
+    private final VirtualFileFilter filter;
+
+    /**
+     * What is matched
+     */
+    private final ConcurrentLinkedQueue<VirtualFile> matched = new ConcurrentLinkedQueue<VirtualFile>();
+
+    private static VisitorAttributes checkAttributes(VirtualFileFilter filter, VisitorAttributes attributes) {
+        if (filter == null) {
+            throw MESSAGES.nullArgument("filter");
+        }
+        if (attributes != null) { return attributes; }
+        if (filter instanceof VirtualFileFilterWithAttributes) { return ((VirtualFileFilterWithAttributes) filter).getAttributes(); }
+        return null;
+    }
+
+    /**
+     * Create a new ConcurrentFilterVirtualFileVisitor with default attributes
+     *
+     * @param filter the filter
+     * @throws IllegalArgumentException if the filter is null
+     */
+    public ConcurrentFilterVirtualFileVisitor(VirtualFileFilter filter) {
+        this(filter, null);
+    }
+
+    /**
+     * Create a new ConcurrentFilterVirtualFileVisitor.
+     *
+     * @param filter     the filter
+     * @param attributes the attributes, uses the default if null
+     * @throws IllegalArgumentException if the filter is null
+     */
+    public ConcurrentFilterVirtualFileVisitor(VirtualFileFilter filter, VisitorAttributes attributes) {
+        super(checkAttributes(filter, attributes));
+        this.filter = filter;
+    }
+
+    /**
+     * Get a snapshot of the matched files, in the order in which they were matched.
+     *
+     * @return the matched files
+     */
+    public List<VirtualFile> getMatched() {
+        return new ArrayList<VirtualFile>(matched);
+    }
+
+    public void visit(VirtualFile virtualFile) {
+        if (filter.accepts(virtualFile)) {
+            matched.add(virtualFile);
+        }
+    }
+}
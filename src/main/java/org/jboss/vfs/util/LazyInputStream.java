@@ -23,6 +23,8 @@ import static org.jboss.vfs.VFSMessages.MESSAGES;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.jboss.vfs.VirtualFile;
 
@@ -33,11 +35,13 @@ import org.jboss.vfs.VirtualFile;
  * Won't be opened if not used at all.
  * <p/>
  * Synchronization is very simplistic, as it's highly unlikely
- * there will be a lot of concurrent requests.
+ * there will be a lot of concurrent requests.  A lock is used rather
+ * than a monitor, so that opening the stream does not pin a virtual thread.
  *
  * @author <a href="mailto:ales.justin@jboss.org">Ales Justin</a>
  */
 public class LazyInputStream extends InputStream {
+    private final Lock lock = new ReentrantLock();
     private VirtualFile file;
     private InputStream stream;
 
@@ -54,9 +58,14 @@ public class LazyInputStream extends InputStream {
      * @return file's stream
      * @throws IOException for any IO error
      */
-    protected synchronized InputStream openStream() throws IOException {
-        if (stream == null) { stream = file.openStream(); }
-        return stream;
+    protected InputStream openStream() throws IOException {
+        lock.lock();
+        try {
+            if (stream == null) { stream = file.openStream(); }
+            return stream;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -85,11 +94,16 @@ public class LazyInputStream extends InputStream {
     }
 
     @Override
-    public synchronized void close() throws IOException {
-        if (stream == null) { return; }
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (stream == null) { return; }
 
-        openStream().close();
-        stream = null; // reset the stream
+            openStream().close();
+            stream = null; // reset the stream
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -45,14 +45,6 @@ public class PathTokenizer {
      */
     private static final String REVERSE_PATH = "..";
 
-    /**
-     * Token states
-     */
-    private static final int STATE_INITIAL = 0;
-    private static final int STATE_NORMAL = 1;
-    private static final int STATE_MAYBE_CURRENT_PATH = 2;
-    private static final int STATE_MAYBE_REVERSE_PATH = 3;
-
     /**
      * Utility class
      */
@@ -107,95 +99,25 @@ public class PathTokenizer {
      * @throws IllegalArgumentException if the path is null
      */
     public static void getTokens(List<String> list, String path) {
-        int start = -1, length = path.length(), state = STATE_INITIAL;
-        char ch;
-        for (int index = 0; index < length; index++) {
-            ch = path.charAt(index);
-            switch (ch) {
-                case '/':
-                case '\\': {
-                    switch (state) {
-                        case STATE_INITIAL: {
-                            // skip extra leading /
-                            continue;
-                        }
-                        case STATE_MAYBE_CURRENT_PATH: {
-                            // it's '.'
-                            list.add(CURRENT_PATH);
-                            state = STATE_INITIAL;
-                            continue;
-                        }
-                        case STATE_MAYBE_REVERSE_PATH: {
-                            // it's '..'
-                            list.add(REVERSE_PATH);
-                            state = STATE_INITIAL;
-                            continue;
-                        }
-                        case STATE_NORMAL: {
-                            // it's just a normal path segment
-                            list.add(path.substring(start, index));
-                            state = STATE_INITIAL;
-                            continue;
-                        }
-                    }
-                    continue;
-                }
-                case '.': {
-                    switch (state) {
-                        case STATE_INITIAL: {
-                            // . is the first char; might be a special token
-                            state = STATE_MAYBE_CURRENT_PATH;
-                            start = index;
-                            continue;
-                        }
-                        case STATE_MAYBE_CURRENT_PATH: {
-                            // the second . in a row...
-                            state = STATE_MAYBE_REVERSE_PATH;
-                            continue;
-                        }
-                        case STATE_MAYBE_REVERSE_PATH: {
-                            // the third . in a row, guess it's just a weird path name
-                            state = STATE_NORMAL;
-                            continue;
-                        }
-                    }
-                    continue;
-                }
-                default: {
-                    switch (state) {
-                        case STATE_INITIAL: {
-                            state = STATE_NORMAL;
-                            start = index;
-                            continue;
-                        }
-                        case STATE_MAYBE_CURRENT_PATH:
-                        case STATE_MAYBE_REVERSE_PATH: {
-                            state = STATE_NORMAL;
-                        }
-                    }
-                }
-            }
+        final Cursor cursor = new Cursor(path);
+        while (cursor.next()) {
+            list.add(cursor.getToken());
         }
-        // handle the last token
-        switch (state) {
-            case STATE_INITIAL: {
-                // trailing /
-                break;
-            }
-            case STATE_MAYBE_CURRENT_PATH: {
-                list.add(CURRENT_PATH);
-                break;
-            }
-            case STATE_MAYBE_REVERSE_PATH: {
-                list.add(REVERSE_PATH);
-                break;
-            }
-            case STATE_NORMAL: {
-                list.add(path.substring(start));
-                break;
-            }
+    }
+
+    /**
+     * Get a cursor over the tokens that comprise this path.  Unlike {@link #getTokens(String)}, the cursor finds each
+     * token in place, and creates no list and no substrings unless {@link Cursor#getToken()} is called.
+     *
+     * @param path the path
+     * @return the cursor
+     * @throws IllegalArgumentException if the path is null
+     */
+    public static Cursor cursor(CharSequence path) {
+        if (path == null) {
+            throw MESSAGES.nullArgument("path");
         }
-        return;
+        return new Cursor(path);
     }
 
     /**
@@ -273,4 +195,116 @@ public class PathTokenizer {
     public static boolean isReverseToken(String token) {
         return REVERSE_PATH == token;
     }
+
+    /**
+     * A cursor over the tokens of a path.  Tokens are separated by any run of {@code /} or {@code \} characters; a
+     * token of exactly {@code .} or {@code ..} is a current or reverse path token.  A cursor is not thread-safe.
+     */
+    public static final class Cursor {
+        private final CharSequence path;
+        private final int length;
+        private int start;
+        private int end;
+
+        Cursor(CharSequence path) {
+            this.path = path;
+            length = path.length();
+        }
+
+        /**
+         * Move to the next token.
+         *
+         * @return {@code true} if there is a next token, {@code false} if the end of the path was reached
+         */
+        public boolean next() {
+            int index = end;
+            while (index < length && isSeparator(path.charAt(index))) {
+                index++;
+            }
+            if (index == length) {
+                start = end = length;
+                return false;
+            }
+            start = index;
+            while (index < length && !isSeparator(path.charAt(index))) {
+                index++;
+            }
+            end = index;
+            return true;
+        }
+
+        /**
+         * Determine whether the current token is the last one.
+         *
+         * @return {@code true} if no token follows the current one
+         */
+        public boolean isLast() {
+            for (int index = end; index < length; index++) {
+                if (!isSeparator(path.charAt(index))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Get the index of the first character of the current token.
+         *
+         * @return the start index
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * Get the index after the last character of the current token.
+         *
+         * @return the end index
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * Determine whether the current token is a current path token.
+         *
+         * @return {@code true} if the current token is {@code .}
+         */
+        public boolean isCurrentToken() {
+            return end - start == 1 && path.charAt(start) == '.';
+        }
+
+        /**
+         * Determine whether the current token is a reverse path token.
+         *
+         * @return {@code true} if the current token is {@code ..}
+         */
+        public boolean isReverseToken() {
+            return end - start == 2 && path.charAt(start) == '.' && path.charAt(start + 1) == '.';
+        }
+
+        /**
+         * Get the current token as a string.  Current and reverse path tokens are returned as the constants recognized
+         * by {@link PathTokenizer#isCurrentToken(String)} and {@link PathTokenizer#isReverseToken(String)}, and a token
+         * which spans the whole of a string path is that string itself.
+         *
+         * @return the token
+         */
+        public String getToken() {
+            if (isCurrentToken()) {
+                return CURRENT_PATH;
+            }
+            if (isReverseToken()) {
+                return REVERSE_PATH;
+            }
+            if (start == 0 && end == length && path instanceof String) {
+                return (String) path;
+            }
+            return path.subSequence(start, end).toString();
+        }
+
+        private static boolean isSeparator(char ch) {
+            return ch == '/' || ch == '\\';
+        }
+    }
 }
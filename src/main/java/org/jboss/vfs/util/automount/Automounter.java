@@ -230,7 +230,9 @@ public class Automounter {
                         }
                     } else {
                         if (mountConfig.copyTarget()) { handles.add(VFS.mountZip(target, target, provider)); } else {
-                            handles.add(VFS.mountZip(target.getPhysicalFile(), target, provider));
+                            // an archive nested in a mounted zip is read in place rather than extracted
+                            final Closeable handle = VFS.mountNestedZip(target, target, provider);
+                            handles.add(handle != null ? handle : VFS.mountZip(target.getPhysicalFile(), target, provider));
                         }
                     }
                 }
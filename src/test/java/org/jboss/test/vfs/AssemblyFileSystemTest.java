@@ -3,9 +3,12 @@ package org.jboss.test.vfs;
 import java.io.Closeable;
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
+import org.jboss.vfs.FileAttributes;
 import org.jboss.vfs.VFS;
 import org.jboss.vfs.VFSUtils;
 import org.jboss.vfs.VirtualFile;
@@ -72,6 +75,23 @@ public class AssemblyFileSystemTest extends AbstractVFSTest {
         }
     }
 
+    @Test
+    public void testMissingFileAdded() throws Exception {
+
+        VirtualFile assemblyLocation = VFS.getChild("/assembly");
+        VirtualFileAssembly assembly = new VirtualFileAssembly();
+        Closeable assemblyHandle = VFS.mountAssembly(assembly, assemblyLocation);
+        try {
+            VirtualFile virtualFile = assemblyLocation.getChild("web.xml");
+            assertFalse(virtualFile.exists());
+            assertFalse(virtualFile.exists());
+            assembly.add("web.xml", getVirtualFile("/vfs/test/test-web.xml"));
+            assertTrue(virtualFile.exists());
+        } finally {
+            VFSUtils.safeClose(assemblyHandle);
+        }
+    }
+
     @Test
     public void testDelete() throws Exception {
 
@@ -104,6 +124,14 @@ public class AssemblyFileSystemTest extends AbstractVFSTest {
                 assertTrue(child.getPathName().startsWith(winFriendlyAbsolutePath("/assembly/jar1.jar")));
             }
 
+            Map<VirtualFile, FileAttributes> withAttributes = virtualFile.getChildrenWithAttributes();
+            assertEquals(directoryEntries, new ArrayList<VirtualFile>(withAttributes.keySet()));
+            for (Map.Entry<VirtualFile, FileAttributes> entry : withAttributes.entrySet()) {
+                assertEquals(entry.getKey().isDirectory(), entry.getValue().isDirectory());
+                assertEquals(entry.getKey().getSize(), entry.getValue().getSize());
+            }
+            assertEquals(Arrays.asList(virtualFile), new ArrayList<VirtualFile>(assemblyLocation.getChildrenWithAttributes().keySet()));
+
         } finally {
             VFSUtils.safeClose(assemblyHandle);
         }
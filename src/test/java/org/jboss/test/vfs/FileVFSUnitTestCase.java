@@ -32,6 +32,9 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
@@ -40,10 +43,12 @@ import java.util.jar.Manifest;
 
 import org.jboss.test.vfs.support.ClassPathIterator;
 import org.jboss.test.vfs.support.ClassPathIterator.ClassPathEntry;
+import org.jboss.vfs.FileAttributes;
 import org.jboss.vfs.VFS;
 import org.jboss.vfs.VFSUtils;
 import org.jboss.vfs.VirtualFile;
 import org.jboss.vfs.VisitorAttributes;
+import org.jboss.vfs.util.ConcurrentFilterVirtualFileVisitor;
 import org.jboss.vfs.util.SuffixMatchFilter;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -583,6 +588,87 @@ public class FileVFSUnitTestCase extends AbstractVFSTest {
         }
     }
 
+    /**
+     * Test that a parallel scan across nested jar mounts finds the same files as a sequential one, with every
+     * directory preceding its descendants.
+     *
+     * @throws Exception
+     */
+    public void testClassScanParallel() throws Exception {
+        VirtualFile outer = getVirtualFile("/vfs/test/outer.jar");
+        List<Closeable> mounts = recursiveMount(outer);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<VirtualFile> sequential = outer.getChildrenRecursively();
+            List<VirtualFile> parallel = outer.getChildrenRecursively(null, pool);
+            assertEquals(new HashSet<VirtualFile>(sequential), new HashSet<VirtualFile>(parallel));
+            assertEquals(sequential.size(), parallel.size());
+            for (int i = 0; i < parallel.size(); i++) {
+                VirtualFile parent = parallel.get(i).getParent();
+                if (!parent.equals(outer)) {
+                    assertTrue(parallel.get(i) + " after its parent", parallel.subList(0, i).contains(parent));
+                }
+            }
+
+            SuffixMatchFilter classVisitor = new SuffixMatchFilter(".class", VisitorAttributes.RECURSE_LEAVES_ONLY);
+            ConcurrentFilterVirtualFileVisitor visitor = new ConcurrentFilterVirtualFileVisitor(classVisitor);
+            outer.visitParallel(visitor, pool);
+            assertEquals("There were 6 classes", 6, visitor.getMatched().size());
+        } finally {
+            pool.shutdown();
+            VFSUtils.safeClose(mounts);
+        }
+    }
+
+    /**
+     * Test that the lazy tree walk matches the visitor-based scans.
+     *
+     * @throws Exception
+     */
+    public void testWalk() throws Exception {
+        VirtualFile outer = getVirtualFile("/vfs/test/outer.jar");
+        List<Closeable> mounts = recursiveMount(outer);
+        try {
+            List<VirtualFile> recursive = outer.getChildrenRecursively();
+            assertEquals(recursive, outer.walk(VisitorAttributes.RECURSE).collect(Collectors.toList()));
+            List<VirtualFile> all = outer.walk().collect(Collectors.toList());
+            assertEquals(outer, all.get(0));
+            assertEquals(recursive, all.subList(1, all.size()));
+
+            SuffixMatchFilter classFilter = new SuffixMatchFilter(".class", VisitorAttributes.RECURSE_LEAVES_ONLY);
+            assertEquals(outer.getChildren(classFilter), outer.find(classFilter).collect(Collectors.toList()));
+            assertEquals("There were 6 classes", 6, outer.find(classFilter).count());
+            assertTrue(outer.walk(VisitorAttributes.RECURSE_LEAVES_ONLY).noneMatch(VirtualFile::isDirectory));
+            assertEquals(outer.getChildren(), outer.walk(VisitorAttributes.DEFAULT).collect(Collectors.toList()));
+            // the stream is lazy, so taking the first file does not scan the whole tree
+            assertEquals(recursive.get(0), outer.find(null).findFirst().get());
+        } finally {
+            VFSUtils.safeClose(mounts);
+        }
+    }
+
+    /**
+     * Test that the lazy find includes hidden files, as the visitor-based scan does.
+     *
+     * @throws Exception
+     */
+    public void testFindHidden() throws Exception {
+        File tmpRoot = Files.createTempDirectory("testFindHidden").toFile();
+        try {
+            File dir = new File(tmpRoot, "dir");
+            dir.mkdir();
+            new File(tmpRoot, ".hidden").createNewFile();
+            new File(dir, ".hidden").createNewFile();
+            new File(dir, "visible").createNewFile();
+            VirtualFile root = VFS.getChild(tmpRoot.getPath());
+            List<VirtualFile> recursive = root.getChildrenRecursively(null);
+            assertEquals(4, recursive.size());
+            assertEquals(recursive, root.find(null).collect(Collectors.toList()));
+        } finally {
+            VFSUtils.recursiveDelete(tmpRoot);
+        }
+    }
+
     /**
      * Test a scan of the unpacked-outer.jar vfs to locate all .class files
      *
@@ -1192,6 +1278,51 @@ public class FileVFSUnitTestCase extends AbstractVFSTest {
         assertTrue(tmpRoot + ".delete()", tmpRoot.delete());
     }
 
+    /**
+     * Test VirtualFile.getAttributes against the individual attribute methods, on the root and on a real mount.
+     *
+     * @throws Exception
+     */
+    public void testFileAttributes() throws Exception {
+        File tmpRoot = Files.createTempDirectory("vfs" + ".root").toFile();
+        File tmp = new File(tmpRoot, "testFileAttributes.txt");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        fos.write("testFileAttributes".getBytes());
+        fos.close();
+
+        VirtualFile testdir = VFS.getChild(tmpRoot.toURI().toURL().getPath());
+        VirtualFile mountPoint = VFS.getChild("/test-file-attributes");
+        Closeable handle = VFS.mountReal(tmpRoot, mountPoint);
+        try {
+            for (VirtualFile dir : new VirtualFile[] {testdir, mountPoint}) {
+                FileAttributes dirAttributes = dir.getAttributes();
+                assertTrue(dir + ".exists()", dirAttributes.exists());
+                assertTrue(dir + ".isDirectory()", dirAttributes.isDirectory());
+                assertFalse(dir + ".isFile()", dirAttributes.isFile());
+
+                VirtualFile tmpVF = dir.getChild(tmp.getName());
+                FileAttributes attributes = tmpVF.getAttributes();
+                assertTrue(tmpVF + ".exists()", attributes.exists());
+                assertTrue(tmpVF + ".isFile()", attributes.isFile());
+                assertFalse(tmpVF + ".isDirectory()", attributes.isDirectory());
+                assertEquals(tmpVF.getSize(), attributes.getSize());
+                assertEquals(tmpVF.getLastModified(), attributes.getLastModified());
+
+                assertFalse(dir.getChild("nosuch.txt").getAttributes().exists());
+
+                Map<VirtualFile, FileAttributes> children = dir.getChildrenWithAttributes();
+                assertEquals(dir.getChildren(), new ArrayList<VirtualFile>(children.keySet()));
+                FileAttributes childAttributes = children.get(tmpVF);
+                assertTrue(childAttributes.isFile());
+                assertEquals(attributes.getSize(), childAttributes.getSize());
+                assertEquals(attributes.getLastModified(), childAttributes.getLastModified());
+            }
+        } finally {
+            VFSUtils.safeClose(handle);
+        }
+        assertTrue(tmp + ".delete()", tmp.delete());
+        assertTrue(tmpRoot + ".delete()", tmpRoot.delete());
+    }
 
     /**
      * Test VirtualFile.exists for vfsfile based urls for a directory.
@@ -1304,6 +1435,20 @@ public class FileVFSUnitTestCase extends AbstractVFSTest {
         assertTrue(tmpRoot + ".delete()", root.delete());
     }
 
+    public void testIntern() throws Exception {
+        VirtualFile file = VFS.getChild("/intern/a/B.txt");
+        VirtualFile canonical = file.intern();
+        assertEquals(file, canonical);
+        assertSame(canonical, canonical.intern());
+        assertSame(canonical, VFS.getChild("/intern/a/B.txt").intern());
+        assertSame(canonical, VFS.getChild("/intern/a/c/../B.txt").intern());
+        assertSame(canonical.getParent(), VFS.getChild("/intern/a").intern());
+        assertSame(VFS.getRootVirtualFile(), VFS.getRootVirtualFile().intern());
+        assertFalse(canonical.equals(VFS.getChild("/intern/a/b.txt").intern()));
+        assertFalse(canonical.equals(VFS.getChild("/intern/b/B.txt")));
+        assertEquals("b.txt", canonical.getLowerCaseName());
+    }
+
     private URL toVfsUrl(URL fileUrl) throws Exception {
         return new URL(VFSUtils.VFS_PROTOCOL, fileUrl.getHost(), fileUrl.getFile());
     }
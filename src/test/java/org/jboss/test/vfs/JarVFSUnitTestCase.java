@@ -18,11 +18,35 @@
 package org.jboss.test.vfs;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import org.jboss.vfs.FileAttributes;
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VFSUtils;
 import org.jboss.vfs.VirtualFile;
 import org.junit.Assert;
 
@@ -55,6 +79,257 @@ public class JarVFSUnitTestCase extends AbstractVFSTest {
         Assert.assertFalse("Lines match", ll.equals(ul));
     }
 
+    public void testEntryAttributes() throws Throwable {
+        VirtualFile jar = getVirtualFile("/vfs/test/jar1.jar");
+        JarFile jarFile = new JarFile(jar.getPhysicalFile());
+        Closeable handle = VFS.mountZip(jar, jar, provider);
+        try {
+            Set<String> topLevel = new HashSet<String>();
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = VFSUtils.fixName(entry.getName());
+                topLevel.add(name.indexOf('/') == -1 ? name : name.substring(0, name.indexOf('/')));
+                VirtualFile file = jar.getChild(name);
+                assertTrue(name, file.exists());
+                assertEquals(name, entry.isDirectory(), file.isDirectory());
+                assertEquals(name, !entry.isDirectory(), file.isFile());
+                if (!entry.isDirectory()) {
+                    assertEquals(name, entry.getSize(), file.getSize());
+                    assertEquals(name, entry.getTime(), file.getLastModified());
+                    assertEquals(name, entry.getSize(), getContent(file).length);
+                    Assert.assertArrayEquals(name, getContent(jarFile.getInputStream(entry)), Files.readAllBytes(file.getPhysicalFile().toPath()));
+                }
+                FileAttributes attributes = file.getAttributes();
+                assertTrue(name, attributes.exists());
+                assertEquals(name, file.isDirectory(), attributes.isDirectory());
+                assertEquals(name, file.isFile(), attributes.isFile());
+                assertEquals(name, file.getSize(), attributes.getSize());
+                assertEquals(name, file.getLastModified(), attributes.getLastModified());
+            }
+            Set<String> children = new HashSet<String>();
+            for (VirtualFile child : jar.getChildren()) {
+                children.add(child.getName());
+            }
+            assertEquals(topLevel, children);
+            for (VirtualFile dir : jar.getChildrenRecursively()) {
+                Map<VirtualFile, FileAttributes> withAttributes = dir.getChildrenWithAttributes();
+                assertEquals(dir.getChildren(), new ArrayList<VirtualFile>(withAttributes.keySet()));
+                for (Map.Entry<VirtualFile, FileAttributes> entry : withAttributes.entrySet()) {
+                    VirtualFile child = entry.getKey();
+                    assertEquals(child.getPathName(), child.isDirectory(), entry.getValue().isDirectory());
+                    assertEquals(child.getPathName(), child.getSize(), entry.getValue().getSize());
+                    assertEquals(child.getPathName(), child.getLastModified(), entry.getValue().getLastModified());
+                }
+            }
+            assertFalse(jar.getChild("does/not/exist").exists());
+            assertSame(FileAttributes.NON_EXISTENT, jar.getChild("does/not/exist").getAttributes());
+            assertFalse(jar.getChild("META-INF/MANIFEST.MF/child").exists());
+        } finally {
+            VFSUtils.safeClose(handle);
+            jarFile.close();
+        }
+    }
+
+    public void testCollidingNames() throws Throwable {
+        // "Aa" and "BB" have the same hash code, so lookups must not rely on hashes alone
+        File tmpJar = File.createTempFile("colliding", ".jar");
+        tmpJar.deleteOnExit();
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(tmpJar));
+        try {
+            for (String name : new String[] {"Aa/Aa.txt", "BB/BB.txt", "Aa/BB/Aa.txt"}) {
+                byte[] content = name.getBytes("UTF-8");
+                JarEntry entry = new JarEntry(name);
+                if (name.startsWith("BB")) {
+                    // stored rather than deflated
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    entry.setMethod(JarEntry.STORED);
+                    entry.setSize(content.length);
+                    entry.setCrc(crc.getValue());
+                }
+                jos.putNextEntry(entry);
+                jos.write(content);
+            }
+        } finally {
+            jos.close();
+        }
+        VirtualFile jar = VFS.getChild(tmpJar.getPath());
+        Closeable handle = VFS.mountZip(jar, jar, provider);
+        try {
+            for (String name : new String[] {"Aa/Aa.txt", "BB/BB.txt", "Aa/BB/Aa.txt"}) {
+                VirtualFile file = jar.getChild(name);
+                assertTrue(name, file.isFile());
+                assertEquals(name, readLine(file));
+                assertEquals(name, new String(Files.readAllBytes(file.getPhysicalFile().toPath()), "UTF-8"));
+            }
+            assertFalse(jar.getChild("Aa/BB.txt").exists());
+            assertFalse(jar.getChild("BB/Aa.txt").exists());
+            assertFalse(jar.getChild("BB/BB/Aa.txt").exists());
+            assertTrue(jar.getChild("Aa/BB").isDirectory());
+            assertFalse(jar.getChild("BB/Aa").exists());
+        } finally {
+            VFSUtils.safeClose(handle);
+            tmpJar.delete();
+        }
+    }
+
+    public void testStreamMount() throws Throwable {
+        VirtualFile jar = getVirtualFile("/vfs/test/jar1.jar");
+        File origin = jar.getPhysicalFile();
+        VirtualFile mountPoint = VFS.getChild("/stream-mount/jar1.jar");
+        Closeable handle = VFS.mountZip(new FileInputStream(origin), "jar1.jar", mountPoint, provider);
+        try {
+            VirtualFile manifest = mountPoint.getChild("META-INF/MANIFEST.MF");
+            assertTrue(manifest.isFile());
+            assertEquals(origin.length(), mountPoint.getSize());
+            // the archive itself is only written out when asked for
+            File source = VFSUtils.getMountSource(handle);
+            Assert.assertArrayEquals(Files.readAllBytes(origin.toPath()), Files.readAllBytes(source.toPath()));
+            assertTrue(readLine(manifest).startsWith("Manifest-Version"));
+        } finally {
+            VFSUtils.safeClose(handle);
+        }
+    }
+
+    public void testMountZips() throws Throwable {
+        File jar1 = getVirtualFile("/vfs/test/jar1.jar").getPhysicalFile();
+        File jar2 = getVirtualFile("/vfs/test/jar2.jar").getPhysicalFile();
+        VirtualFile lib = VFS.getChild("/batch/lib");
+        Map<VirtualFile, File> zipFiles = new LinkedHashMap<VirtualFile, File>();
+        for (int i = 0; i < 10; i++) {
+            zipFiles.put(lib.getChild("jar" + i + ".jar"), i % 2 == 0 ? jar1 : jar2);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Closeable handle = VFS.mountZips(zipFiles, provider, executor);
+            try {
+                for (VirtualFile mountPoint : zipFiles.keySet()) {
+                    assertTrue(mountPoint.getPathName(), mountPoint.getChild("META-INF/MANIFEST.MF").isFile());
+                }
+            } finally {
+                handle.close();
+            }
+            for (VirtualFile mountPoint : zipFiles.keySet()) {
+                assertFalse(mountPoint.getPathName(), mountPoint.getChild("META-INF/MANIFEST.MF").exists());
+            }
+
+            // one bad archive fails the whole batch
+            File notAZip = File.createTempFile("not-a-zip", ".jar");
+            notAZip.deleteOnExit();
+            zipFiles.put(lib.getChild("bad.jar"), notAZip);
+            try {
+                VFS.mountZips(zipFiles, provider, executor);
+                fail("Expected an exception");
+            } catch (IOException expected) {
+            } finally {
+                notAZip.delete();
+            }
+            for (VirtualFile mountPoint : zipFiles.keySet()) {
+                assertFalse(mountPoint.getPathName(), mountPoint.getChild("META-INF/MANIFEST.MF").exists());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testMountZipsConflict() throws Throwable {
+        File jar1 = getVirtualFile("/vfs/test/jar1.jar").getPhysicalFile();
+        VirtualFile lib = VFS.getChild("/batch-conflict/lib");
+        Map<VirtualFile, File> zipFiles = new LinkedHashMap<VirtualFile, File>();
+        zipFiles.put(lib.getChild("a.jar"), jar1);
+        zipFiles.put(lib.getChild("b.jar"), jar1);
+        Closeable existing = VFS.mountZip(jar1, lib.getChild("b.jar"), provider);
+        try {
+            // a mount point which is taken fails the batch before any archive is mounted
+            VFS.mountZips(zipFiles, provider, null);
+            fail("Expected an exception");
+        } catch (IOException expected) {
+            assertFalse(lib.getChild("a.jar/META-INF/MANIFEST.MF").exists());
+            assertTrue(lib.getChild("b.jar/META-INF/MANIFEST.MF").isFile());
+        } finally {
+            existing.close();
+        }
+    }
+
+    public void testMountZipsOnOwnExecutor() throws Throwable {
+        File jar1 = getVirtualFile("/vfs/test/jar1.jar").getPhysicalFile();
+        VirtualFile lib = VFS.getChild("/batch-own/lib");
+        final Map<VirtualFile, File> zipFiles = new LinkedHashMap<VirtualFile, File>();
+        for (int i = 0; i < 4; i++) {
+            zipFiles.put(lib.getChild("jar" + i + ".jar"), jar1);
+        }
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // the only thread of the executor is the caller, so it must index the archives itself
+            Closeable handle = executor.submit(new Callable<Closeable>() {
+                public Closeable call() throws Exception {
+                    return VFS.mountZips(zipFiles, provider, executor);
+                }
+            }).get(60L, TimeUnit.SECONDS);
+            try {
+                for (VirtualFile mountPoint : zipFiles.keySet()) {
+                    assertTrue(mountPoint.getPathName(), mountPoint.getChild("META-INF/MANIFEST.MF").isFile());
+                }
+            } finally {
+                handle.close();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testNestedMount() throws Throwable {
+        ByteArrayOutputStream inner = new ByteArrayOutputStream();
+        JarOutputStream jos = new JarOutputStream(inner);
+        try {
+            jos.putNextEntry(new JarEntry("org/test/a.txt"));
+            jos.write("nested".getBytes("UTF-8"));
+        } finally {
+            jos.close();
+        }
+        byte[] innerBytes = inner.toByteArray();
+        File tmpJar = File.createTempFile("outer", ".jar");
+        tmpJar.deleteOnExit();
+        jos = new JarOutputStream(new FileOutputStream(tmpJar));
+        try {
+            JarEntry stored = new JarEntry("lib/stored.jar");
+            CRC32 crc = new CRC32();
+            crc.update(innerBytes);
+            stored.setMethod(JarEntry.STORED);
+            stored.setSize(innerBytes.length);
+            stored.setCrc(crc.getValue());
+            jos.putNextEntry(stored);
+            jos.write(innerBytes);
+            jos.putNextEntry(new JarEntry("lib/deflated.jar"));
+            jos.write(innerBytes);
+        } finally {
+            jos.close();
+        }
+        VirtualFile jar = VFS.getChild(tmpJar.getPath());
+        Closeable handle = VFS.mountZip(jar, jar, provider);
+        try {
+            assertNull(VFS.mountNestedZip(jar.getChild("lib"), jar.getChild("lib"), provider));
+            for (String name : new String[] {"lib/stored.jar", "lib/deflated.jar"}) {
+                VirtualFile nested = jar.getChild(name);
+                Closeable nestedHandle = VFS.mountNestedZip(nested, nested, provider);
+                assertNotNull(name, nestedHandle);
+                try {
+                    VirtualFile file = nested.getChild("org/test/a.txt");
+                    assertTrue(name, file.isFile());
+                    assertEquals("nested", readLine(file));
+                    assertEquals("nested", new String(Files.readAllBytes(file.getPhysicalFile().toPath()), "UTF-8"));
+                    assertEquals(innerBytes.length, nested.getSize());
+                } finally {
+                    VFSUtils.safeClose(nestedHandle);
+                }
+            }
+        } finally {
+            VFSUtils.safeClose(handle);
+            tmpJar.delete();
+        }
+    }
+
     static String readLine(VirtualFile file) throws Throwable {
         InputStream is = file.openStream();
         try {
@@ -19,6 +19,13 @@ package org.jboss.test.vfs;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.jboss.vfs.VFS;
 import org.jboss.vfs.VFSUtils;
@@ -59,4 +66,63 @@ public class MountHandleTestCase extends AbstractVFSTest {
             VFSUtils.safeClose(mountHandle);
         }
     }
+
+    public void testMountVisibleAfterLookup() throws Exception {
+        VirtualFile jar = getVirtualFile("/vfs/test/jar1.jar");
+        VirtualFile manifest = jar.getChild("META-INF/MANIFEST.MF");
+        assertFalse(manifest.exists());
+        Closeable mountHandle = VFS.mountZip(jar, jar, provider);
+        try {
+            assertTrue(manifest.exists());
+            assertTrue(jar.getChild("META-INF").isDirectory());
+        } finally {
+            VFSUtils.safeClose(mountHandle);
+        }
+        assertFalse(manifest.exists());
+        assertTrue(jar.isFile());
+    }
+
+    public void testConcurrentSiblingMounts() throws Exception {
+        final File root = getVirtualFile("/vfs/test").getPhysicalFile();
+        final VirtualFile lib = VFS.getChild("/concurrent-mounts/lib");
+        final int threads = 8;
+        final int perThread = 50;
+        final Closeable[] handles = new Closeable[threads * perThread];
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                final int first = t * perThread;
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        for (int i = first; i < first + perThread; i++) {
+                            handles[i] = VFS.mountReal(root, lib.getChild("jar" + i));
+                        }
+                        // unmount every other one while the other threads are still mounting
+                        for (int i = first; i < first + perThread; i += 2) {
+                            handles[i].close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            for (int i = 0; i < handles.length; i++) {
+                assertEquals("jar" + i, i % 2 == 1, lib.getChild("jar" + i).getChild("jar1.jar").exists());
+            }
+            try {
+                VFS.mountReal(root, lib.getChild("jar1"));
+                fail("Expected an exception");
+            } catch (IOException expected) {
+            }
+        } finally {
+            executor.shutdown();
+            VFSUtils.safeClose(handles);
+        }
+        for (int i = 0; i < handles.length; i++) {
+            assertFalse(lib.getChild("jar" + i).getChild("jar1.jar").exists());
+        }
+    }
 }
@@ -17,11 +17,26 @@
  */
 package org.jboss.test.vfs;
 
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.jboss.vfs.TempFileProvider;
 import org.jboss.vfs.VFS;
@@ -56,6 +71,93 @@ public class VFSUtilsTestCase extends AbstractVFSTest {
         }
     }
 
+    @Test
+    public void testUnzipParallel() throws Exception {
+        VirtualFile jar = getVirtualFile("/vfs/test/outer.jar");
+        File zipFile = jar.getPhysicalFile();
+        VirtualFile mountPoint = VFS.getChild("/expanded-outer");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Closeable zipHandle = VFS.mountZip(jar, jar, provider);
+        Closeable expandedHandle = VFS.mountZipExpanded(zipFile, mountPoint, provider, executor);
+        try {
+            assertChildren(jar, mountPoint);
+            ZipFile zip = new ZipFile(zipFile);
+            try {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory()) {
+                        VirtualFile file = mountPoint.getChild(entry.getName());
+                        assertEquals(entry.getName(), entry.getSize(), file.getSize());
+                        assertEquals(entry.getName(), entry.getTime() / 1000, file.getLastModified() / 1000);
+                    }
+                }
+            } finally {
+                zip.close();
+            }
+        } finally {
+            VFSUtils.safeClose(expandedHandle, zipHandle);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testUnzipDuplicateEntries() throws Exception {
+        File zipFile = File.createTempFile("duplicates", ".zip");
+        File destDir = Files.createTempDirectory("duplicates").toFile();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // every name extracts to the same file, and the last entry wins
+            ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile));
+            try {
+                for (int i = 0; i < 50; i++) {
+                    out.putNextEntry(new ZipEntry("dir" + "/".repeat(i + 1) + "dup.txt"));
+                    out.write(new byte[10000 + i]);
+                }
+            } finally {
+                out.close();
+            }
+            VFSUtils.unzip(zipFile, destDir, executor);
+            assertEquals(10049L, new File(destDir, "dir/dup.txt").length());
+        } finally {
+            executor.shutdown();
+            VFSUtils.recursiveDelete(destDir);
+            zipFile.delete();
+        }
+    }
+
+    @Test
+    public void testUnzipOnOwnExecutor() throws Exception {
+        final File zipFile = getVirtualFile("/vfs/test/outer.jar").getPhysicalFile();
+        final File destDir = Files.createTempDirectory("own-executor").toFile();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // the only thread of the executor is the caller, so it must extract the entries itself
+            Future<?> future = executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    VFSUtils.unzip(zipFile, destDir, executor);
+                    return null;
+                }
+            });
+            future.get(60L, TimeUnit.SECONDS);
+            assertTrue(new File(destDir, "jar1.jar").isFile());
+        } finally {
+            executor.shutdownNow();
+            VFSUtils.recursiveDelete(destDir);
+        }
+    }
+
+    @Test
+    public void testReadAllBytes() throws Exception {
+        byte[] content = new byte[1000];
+        new Random(1000).nextBytes(content);
+        assertArrayEquals(content, VFSUtils.readAllBytes(new ByteArrayInputStream(content), content.length));
+        assertArrayEquals(content, VFSUtils.readAllBytes(new ByteArrayInputStream(content), -1L));
+        // a stale size is only a hint
+        assertArrayEquals(content, VFSUtils.readAllBytes(new ByteArrayInputStream(content), 10L));
+        assertArrayEquals(content, VFSUtils.readAllBytes(new ByteArrayInputStream(content), 5000L));
+    }
+
     @Test
     public void testReadManifest() throws Exception {
         VirtualFile correctManifest = getVirtualFile("/vfs/test/manifest/correct.mf");
@@ -0,0 +1,279 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.test.vfs;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VFSUtils;
+import org.jboss.vfs.VirtualFile;
+
+/**
+ * Tests of the content access methods of {@link VirtualFile} on real files and on stored and deflated zip entries,
+ * with the zip mounted both from a file and from a stream.
+ */
+public class VirtualFileContentTestCase extends AbstractVFSTest {
+
+    private static final byte[] SMALL = content(1000);
+    private static final byte[] LARGE = content(200000);
+
+    private final List<Closeable> handles = new ArrayList<Closeable>();
+    private File root;
+    private File jar;
+    private VirtualFile realMount;
+    private VirtualFile zipMount;
+    private VirtualFile memoryMount;
+
+    public VirtualFileContentTestCase(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        root = Files.createTempDirectory("vfs-content").toFile();
+        File real = new File(root, "real");
+        assertTrue(real.mkdir());
+        Files.write(new File(real, "small.bin").toPath(), SMALL);
+        Files.write(new File(real, "large.bin").toPath(), LARGE);
+        Files.write(new File(real, "empty.bin").toPath(), new byte[0]);
+        jar = new File(root, "test.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            putStored(out, "small-stored.bin", SMALL);
+            putStored(out, "large-stored.bin", LARGE);
+            out.putNextEntry(new JarEntry("small-deflated.bin"));
+            out.write(SMALL);
+            out.putNextEntry(new JarEntry("large-deflated.bin"));
+            out.write(LARGE);
+            out.putNextEntry(new JarEntry("dir/"));
+        }
+        realMount = VFS.getChild("/content/real");
+        zipMount = VFS.getChild("/content/test.jar");
+        memoryMount = VFS.getChild("/content/memory.jar");
+        handles.add(VFS.mountReal(real, realMount));
+        handles.add(VFS.mountZip(jar, zipMount, provider));
+        handles.add(VFS.mountZip(new FileInputStream(jar), "memory.jar", memoryMount, provider));
+    }
+
+    protected void tearDown() throws Exception {
+        VFSUtils.safeClose(handles);
+        VFSUtils.recursiveDelete(root);
+        super.tearDown();
+    }
+
+    public void testGetContent() throws Exception {
+        assertContent(SMALL, realMount.getChild("small.bin"));
+        assertContent(LARGE, realMount.getChild("large.bin"));
+        assertContent(new byte[0], realMount.getChild("empty.bin"));
+        try {
+            realMount.getChild("missing.bin").readAllBytes();
+            fail("Expected an exception");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testGetContentZipEntries() throws Exception {
+        for (VirtualFile mountPoint : new VirtualFile[] {zipMount, memoryMount}) {
+            assertContent(SMALL, mountPoint.getChild("small-stored.bin"));
+            assertContent(LARGE, mountPoint.getChild("large-stored.bin"));
+            assertContent(SMALL, mountPoint.getChild("small-deflated.bin"));
+            assertContent(LARGE, mountPoint.getChild("large-deflated.bin"));
+        }
+    }
+
+    public void testReadAsync() throws Exception {
+        VirtualFile file = realMount.getChild("large.bin");
+        assertArrayEquals(LARGE, toArray(file.readAsync().get(1, TimeUnit.MINUTES)));
+        assertArrayEquals(LARGE, collect(file.getContentPublisher(), 1L).get(1, TimeUnit.MINUTES));
+        assertArrayEquals(LARGE, collect(file.getContentPublisher(), Long.MAX_VALUE).get(1, TimeUnit.MINUTES));
+        assertEquals(0, realMount.getChild("empty.bin").readAsync().get(1, TimeUnit.MINUTES).remaining());
+        assertEquals(0, collect(realMount.getChild("empty.bin").getContentPublisher(), 1L).get(1, TimeUnit.MINUTES).length);
+        assertFails(realMount.getChild("missing.bin").readAsync());
+        assertFails(collect(realMount.getChild("missing.bin").getContentPublisher(), 1L));
+    }
+
+    public void testReadAsyncZipEntries() throws Exception {
+        for (VirtualFile mountPoint : new VirtualFile[] {zipMount, memoryMount}) {
+            for (String name : new String[] {"large-stored.bin", "large-deflated.bin"}) {
+                VirtualFile file = mountPoint.getChild(name);
+                assertArrayEquals(LARGE, toArray(file.readAsync().get(1, TimeUnit.MINUTES)));
+                assertArrayEquals(LARGE, collect(file.getContentPublisher(), 1L).get(1, TimeUnit.MINUTES));
+            }
+            assertFails(mountPoint.getChild("missing.bin").readAsync());
+        }
+    }
+
+    public void testOpenChannel() throws Exception {
+        try (SeekableByteChannel channel = realMount.getChild("large.bin").openChannel()) {
+            assertTrue(channel instanceof FileChannel);
+            assertRandomAccess(LARGE, channel);
+        }
+        // outside of a real mount the channel is backed by streams
+        File unmounted = new File(root, "real/large.bin");
+        try (SeekableByteChannel channel = VFS.getChild(unmounted.getAbsolutePath()).openChannel()) {
+            assertRandomAccess(LARGE, channel);
+        }
+        try {
+            realMount.getChild("missing.bin").openChannel();
+            fail("Expected an exception");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testOpenChannelZipEntries() throws Exception {
+        for (VirtualFile mountPoint : new VirtualFile[] {zipMount, memoryMount}) {
+            for (String name : new String[] {"large-stored.bin", "large-deflated.bin"}) {
+                try (SeekableByteChannel channel = mountPoint.getChild(name).openChannel()) {
+                    assertRandomAccess(LARGE, channel);
+                }
+            }
+            try {
+                mountPoint.getChild("dir").openChannel();
+                fail("Expected an exception");
+            } catch (IOException expected) {
+            }
+            try {
+                mountPoint.getChild("missing.bin").openChannel();
+                fail("Expected an exception");
+            } catch (IOException expected) {
+            }
+        }
+        try (SeekableByteChannel channel = zipMount.openChannel()) {
+            assertEquals(jar.length(), channel.size());
+        }
+    }
+
+    private static CompletableFuture<byte[]> collect(Flow.Publisher<ByteBuffer> publisher, final long batch) {
+        final CompletableFuture<byte[]> result = new CompletableFuture<byte[]>();
+        publisher.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            private Flow.Subscription subscription;
+
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(batch);
+            }
+
+            public void onNext(ByteBuffer item) {
+                if (!item.isReadOnly()) {
+                    result.completeExceptionally(new AssertionError("writable buffer published"));
+                }
+                final byte[] bytes = toArray(item);
+                out.write(bytes, 0, bytes.length);
+                if (batch != Long.MAX_VALUE) {
+                    subscription.request(batch);
+                }
+            }
+
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            public void onComplete() {
+                result.complete(out.toByteArray());
+            }
+        });
+        return result;
+    }
+
+    private static void assertFails(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(1, TimeUnit.MINUTES);
+            fail("Expected an exception");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IOException);
+        }
+    }
+
+    private static void assertContent(byte[] expected, VirtualFile file) throws IOException {
+        assertArrayEquals(expected, file.readAllBytes());
+        ByteBuffer content = file.getContent();
+        assertTrue(content.isReadOnly());
+        assertEquals(0, content.position());
+        assertArrayEquals(expected, toArray(content));
+    }
+
+    private static void assertRandomAccess(byte[] content, SeekableByteChannel channel) throws IOException {
+        assertEquals(content.length, channel.size());
+        assertEquals(0L, channel.position());
+        ByteBuffer buffer = ByteBuffer.allocate(100);
+        for (int position : new int[] {content.length - 50, 150000, 123, 40000, 0}) {
+            channel.position(position);
+            buffer.clear();
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+            }
+            buffer.flip();
+            for (int i = 0; buffer.hasRemaining(); i++) {
+                assertEquals(content[position + i], buffer.get());
+            }
+        }
+        channel.position(content.length + 10L);
+        assertEquals(-1, channel.read(ByteBuffer.allocateDirect(10)));
+        try {
+            channel.write(ByteBuffer.allocate(1));
+            fail("Expected an exception");
+        } catch (NonWritableChannelException expected) {
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void putStored(JarOutputStream out, String name, byte[] content) throws IOException {
+        JarEntry entry = new JarEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(content);
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+}
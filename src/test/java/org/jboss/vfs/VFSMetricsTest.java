@@ -0,0 +1,172 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.jboss.vfs.spi.FileSystemMetrics;
+import org.jboss.vfs.spi.FileSystemMetrics.OperationStatistics;
+import org.jboss.vfs.spi.MeteredFileSystem;
+import org.jboss.vfs.spi.RealFileSystem;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class VFSMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMeteredFileSystem() throws Exception {
+        File root = folder.newFolder("root");
+        Files.write(new File(root, "a.txt").toPath(), "hello".getBytes("UTF-8"));
+        FileSystemMetrics metrics = new FileSystemMetrics();
+        VirtualFile mountPoint = VFS.getChild("/metrics/metered");
+        Closeable handle = VFS.mount(mountPoint, new MeteredFileSystem(new RealFileSystem(root), metrics));
+        try {
+            VirtualFile file = mountPoint.getChild("a.txt");
+            Assert.assertTrue(file.exists());
+            Assert.assertFalse(mountPoint.getChild("b.txt").exists());
+            Assert.assertEquals(5L, file.getSize());
+            Assert.assertEquals(1, mountPoint.getChildren().size());
+            InputStream is = file.openStream();
+            is.close();
+            try {
+                mountPoint.getChild("b.txt").openStream();
+                Assert.fail("Expected an exception");
+            } catch (IOException expected) {
+            }
+        } finally {
+            handle.close();
+        }
+        Map<String, OperationStatistics> statistics = metrics.getStatistics();
+        Assert.assertEquals(2L, statistics.get("exists").getCount());
+        Assert.assertEquals(0L, statistics.get("exists").getErrors());
+        Assert.assertEquals(1L, statistics.get("getSize").getCount());
+        Assert.assertEquals(1L, statistics.get("getDirectoryEntries").getCount());
+        Assert.assertEquals(2L, statistics.get("openInputStream").getCount());
+        Assert.assertEquals(1L, statistics.get("openInputStream").getErrors());
+        Assert.assertFalse(statistics.containsKey("getCodeSigners"));
+        for (OperationStatistics s : statistics.values()) {
+            long total = 0L;
+            for (long bucket : s.getHistogram()) {
+                total += bucket;
+            }
+            Assert.assertEquals(s.getOperation(), s.getCount(), total);
+            Assert.assertTrue(s.getOperation(), s.getMedianNanos() <= s.getPercentile99Nanos());
+        }
+        metrics.reset();
+        Assert.assertTrue(metrics.getStatistics().isEmpty());
+    }
+
+    @Test
+    public void testMountRegistration() throws Exception {
+        VirtualFile mountPoint = VFS.getChild("/metrics/real");
+        Closeable handle = VFS.mountReal(folder.getRoot(), mountPoint);
+        try {
+            mountPoint.getChild("missing").exists();
+            // mounts are only metered when metrics are enabled
+            FileSystemMetrics metrics = VFSMetrics.getMountMetrics(mountPoint);
+            Assert.assertEquals(VFSMetrics.isEnabled(), metrics != null);
+            if (metrics != null) {
+                Assert.assertEquals(1L, metrics.getStatistics(FileSystemMetrics.Operation.EXISTS).getCount());
+            }
+        } finally {
+            handle.close();
+        }
+        Assert.assertNull(VFSMetrics.getMountMetrics(mountPoint));
+    }
+
+    @Test
+    public void testEnabled() throws Exception {
+        // run by the surefire execution which enables metrics
+        Assume.assumeTrue(VFSMetrics.isEnabled());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(VFSMetrics.OBJECT_NAME);
+        Assert.assertTrue(server.isRegistered(name));
+
+        File jar = folder.newFile("metrics.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new JarEntry("a.txt"));
+            out.write(new byte[100]);
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        TempFileProvider provider = TempFileProvider.create("metrics", executor, true);
+        VirtualFile mountPoint = VFS.getChild("/metrics/zip");
+        long extracted = VFSMetrics.getExtractedBytes();
+        Closeable handle = VFS.mountZip(jar, mountPoint, provider);
+        try {
+            Assert.assertEquals(100L, mountPoint.getChild("a.txt").getPhysicalFile().length());
+            FileSystemMetrics metrics = VFSMetrics.getMountMetrics(mountPoint);
+            Assert.assertNotNull(metrics);
+            Assert.assertEquals(1L, metrics.getStatistics(FileSystemMetrics.Operation.GET_FILE).getCount());
+            Assert.assertEquals(extracted + 100L, VFSMetrics.getExtractedBytes());
+            Assert.assertEquals(Long.valueOf(extracted + 100L), server.getAttribute(name, "ExtractedBytes"));
+            Assert.assertTrue(Arrays.asList((String[]) server.getAttribute(name, "MountPoints")).contains("/metrics/zip"));
+        } finally {
+            handle.close();
+            provider.close();
+            executor.shutdown();
+        }
+        Assert.assertNull(VFSMetrics.getMountMetrics(mountPoint));
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        VirtualFile mountPoint = VFS.getChild("/metrics/mbean");
+        FileSystemMetrics metrics = new FileSystemMetrics();
+        metrics.record(FileSystemMetrics.Operation.GET_FILE, System.nanoTime(), false);
+        VFSMetrics.register(mountPoint, metrics);
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        try {
+            ObjectName name = new ObjectName(VFSMetrics.OBJECT_NAME);
+            server.registerMBean(new VFSMetrics.Bean(), name);
+            Assert.assertArrayEquals(new String[] {"/metrics/mbean"}, (String[]) server.getAttribute(name, "MountPoints"));
+            TabularData mounts = (TabularData) server.getAttribute(name, "MountStatistics");
+            CompositeData mount = mounts.get(new Object[] {"/metrics/mbean"});
+            TabularData operations = (TabularData) mount.get("value");
+            CompositeData getFile = (CompositeData) operations.get(new Object[] {"getFile"}).get("value");
+            Assert.assertEquals(Long.valueOf(1L), getFile.get("count"));
+            Assert.assertTrue(server.getAttribute(name, "ExtractedBytes") instanceof Long);
+        } finally {
+            VFSMetrics.unregister(mountPoint, metrics);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+import org.jboss.vfs.util.LazyInputStream;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs concurrent zip access on virtual threads, and checks with JFR that no virtual thread was pinned inside the VFS.
+ * Skipped on JDKs without virtual threads.
+ */
+public class VirtualThreadPinningTest {
+
+    private static final int TASKS = 500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testNoPinning() throws Exception {
+        final ExecutorService executor;
+        try {
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            Assume.assumeNoException(e);
+            return;
+        }
+        File jar = new File(getClass().getResource("/vfs/test/jar1.jar").toURI());
+        ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+        TempFileProvider provider = TempFileProvider.create("pinning", scheduledExecutor, true);
+        VirtualFile mountPoint = VFS.getChild("/pinning/jar1.jar");
+        Closeable handle = VFS.mountZip(jar, mountPoint, provider);
+        File recordingFile = new File(folder.getRoot(), "pinning.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            final List<VirtualFile> files = new ArrayList<VirtualFile>();
+            for (VirtualFile file : mountPoint.getChildrenRecursively()) {
+                if (file.isFile()) {
+                    files.add(file);
+                }
+            }
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>(TASKS);
+            for (int i = 0; i < TASKS; i++) {
+                final VirtualFile file = files.get(i % files.size());
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        // every task for the same entry races to extract it
+                        Assert.assertEquals(file.getSize(), Files.size(file.getPhysicalFile().toPath()));
+                        InputStream is = new LazyInputStream(file);
+                        try {
+                            while (is.read() != -1) {
+                            }
+                        } finally {
+                            is.close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            recording.stop();
+            recording.dump(recordingFile.toPath());
+        } finally {
+            executor.shutdown();
+            handle.close();
+            provider.close();
+            scheduledExecutor.shutdown();
+        }
+        for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile.toPath())) {
+            final RecordedStackTrace stackTrace = event.getStackTrace();
+            if (stackTrace == null) {
+                continue;
+            }
+            for (RecordedFrame frame : stackTrace.getFrames()) {
+                final String type = frame.getMethod().getType().getName();
+                Assert.assertFalse("Pinned in " + type + "." + frame.getMethod().getName(), type.startsWith("org.jboss.vfs.") && !type.startsWith(getClass().getName()));
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContentPublisherTest {
+
+    @Test
+    public void testCancelInOnNext() {
+        final PendingSource source = new PendingSource();
+        final RecordingSubscriber subscriber = new RecordingSubscriber(2L) {
+            public void onNext(ByteBuffer item) {
+                super.onNext(item);
+                subscription.cancel();
+            }
+        };
+        new ContentPublisher(() -> source).subscribe(subscriber);
+        Assert.assertEquals(1, source.reads);
+        source.complete(10);
+        Assert.assertEquals(1, subscriber.items.get());
+        // the remaining demand is dropped; no further read is started
+        Assert.assertEquals(1, source.reads);
+        Assert.assertTrue(source.closed);
+        Assert.assertNull(subscriber.terminal.get());
+    }
+
+    @Test
+    public void testCancelDuringRead() {
+        final PendingSource source = new PendingSource();
+        final RecordingSubscriber subscriber = new RecordingSubscriber(1L);
+        new ContentPublisher(() -> source).subscribe(subscriber);
+        Assert.assertEquals(1, source.reads);
+        subscriber.subscription.cancel();
+        // the source stays open until the read in flight has completed
+        Assert.assertFalse(source.closed);
+        source.complete(10);
+        Assert.assertEquals(0, subscriber.items.get());
+        Assert.assertEquals(1, source.reads);
+        Assert.assertTrue(source.closed);
+        Assert.assertNull(subscriber.terminal.get());
+    }
+
+    /**
+     * A source whose reads stay pending until completed by the test.
+     */
+    private static final class PendingSource implements ContentPublisher.Source {
+        private ByteBuffer buffer;
+        private BiConsumer<Integer, Throwable> handler;
+        private int reads;
+        private boolean closed;
+
+        public void read(ByteBuffer dst, BiConsumer<Integer, Throwable> handler) {
+            Assert.assertNull("concurrent read", this.handler);
+            reads++;
+            this.buffer = dst;
+            this.handler = handler;
+        }
+
+        void complete(int n) {
+            final BiConsumer<Integer, Throwable> handler = this.handler;
+            this.handler = null;
+            buffer.position(buffer.position() + n);
+            handler.accept(Integer.valueOf(n), null);
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<ByteBuffer> {
+        private final long initial;
+        final AtomicInteger items = new AtomicInteger();
+        final AtomicReference<Object> terminal = new AtomicReference<Object>();
+        Flow.Subscription subscription;
+
+        RecordingSubscriber(long initial) {
+            this.initial = initial;
+        }
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initial);
+        }
+
+        public void onNext(ByteBuffer item) {
+            items.incrementAndGet();
+        }
+
+        public void onError(Throwable throwable) {
+            terminal.set(throwable);
+        }
+
+        public void onComplete() {
+            terminal.set("complete");
+        }
+    }
+}
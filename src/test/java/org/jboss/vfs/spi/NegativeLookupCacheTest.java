@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NegativeLookupCacheTest {
+
+    @Test
+    public void testAddAndRemove() {
+        final NegativeLookupCache<String> cache = new NegativeLookupCache<String>(16);
+        cache.add("a", cache.stamp());
+        cache.add("b/c", cache.stamp());
+        Assert.assertTrue(cache.contains("a"));
+        Assert.assertTrue(cache.contains("b/c"));
+        cache.remove("a");
+        Assert.assertFalse(cache.contains("a"));
+        cache.removeIf(k -> k.startsWith("b/"));
+        Assert.assertFalse(cache.contains("b/c"));
+    }
+
+    @Test
+    public void testStaleStamp() {
+        final NegativeLookupCache<String> cache = new NegativeLookupCache<String>(16);
+        final long stamp = cache.stamp();
+        // a removal during the lookup may have been for the very change it missed
+        cache.remove("other");
+        cache.add("a", stamp);
+        Assert.assertFalse(cache.contains("a"));
+    }
+
+    @Test
+    public void testBounded() {
+        final NegativeLookupCache<Integer> cache = new NegativeLookupCache<Integer>(4);
+        for (int i = 0; i < 100; i++) {
+            cache.add(Integer.valueOf(i), cache.stamp());
+        }
+        int count = 0;
+        for (int i = 0; i < 100; i++) {
+            if (cache.contains(Integer.valueOf(i))) {
+                count++;
+            }
+        }
+        Assert.assertTrue(count <= 4);
+        Assert.assertTrue(cache.contains(Integer.valueOf(99)));
+
+        final NegativeLookupCache<String> none = new NegativeLookupCache<String>(0);
+        none.add("a", none.stamp());
+        Assert.assertFalse(none.contains("a"));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VFSUtils;
+import org.jboss.vfs.VirtualFile;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RealFileCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWatchedChanges() throws Exception {
+        final File root = folder.newFolder("watched");
+        final File dir = new File(root, "dir");
+        Assert.assertTrue(dir.mkdir());
+        Files.write(new File(dir, "a.txt").toPath(), new byte[1]);
+        final VirtualFile mountPoint = VFS.getChild("/cache/watched");
+        final Closeable handle = VFS.mountReal(root, mountPoint, true);
+        try {
+            final VirtualFile vdir = mountPoint.getChild("dir");
+            Assert.assertEquals(Collections.singletonList("a.txt"), names(vdir));
+            Assert.assertEquals(1L, vdir.getChild("a.txt").getSize());
+
+            Files.write(new File(dir, "b.txt").toPath(), new byte[2]);
+            awaitTrue(() -> names(vdir).contains("b.txt"));
+            Files.write(new File(dir, "a.txt").toPath(), new byte[3]);
+            awaitTrue(() -> vdir.getChild("a.txt").getSize() == 3L);
+            Files.delete(new File(dir, "b.txt").toPath());
+            awaitTrue(() -> !vdir.getChild("b.txt").exists());
+
+            // a directory which is replaced is watched afresh
+            Files.delete(new File(dir, "a.txt").toPath());
+            Files.delete(dir.toPath());
+            awaitTrue(() -> !vdir.exists());
+            Assert.assertTrue(dir.mkdir());
+            Files.write(new File(dir, "c.txt").toPath(), new byte[1]);
+            awaitTrue(() -> names(vdir).equals(Collections.singletonList("c.txt")));
+        } finally {
+            handle.close();
+        }
+    }
+
+    @Test
+    public void testRenamedAncestor() throws Exception {
+        final File root = folder.newFolder("renamed");
+        final File app = new File(root, "deploy/app");
+        Assert.assertTrue(app.mkdirs());
+        Files.write(new File(app, "x.txt").toPath(), new byte[5]);
+        final VirtualFile mountPoint = VFS.getChild("/cache/renamed");
+        final Closeable handle = VFS.mountReal(root, mountPoint, true);
+        try {
+            final VirtualFile file = mountPoint.getChild("deploy/app/x.txt");
+            Assert.assertTrue(file.exists());
+            Assert.assertEquals(5L, file.getSize());
+
+            // only the watch on the directory above sees a rename, so it must be watched too
+            Files.move(app.toPath(), new File(root, "deploy/app.old").toPath());
+            awaitTrue(() -> !file.exists());
+            Assert.assertEquals(0L, file.getSize());
+            Assert.assertEquals(5L, mountPoint.getChild("deploy/app.old/x.txt").getSize());
+        } finally {
+            handle.close();
+        }
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        final File root = folder.newFolder("invalidated");
+        final VirtualFile mountPoint = VFS.getChild("/cache/invalidated");
+        final Closeable handle = VFS.mountReal(root, mountPoint, true);
+        try {
+            Assert.assertEquals(Collections.emptyList(), names(mountPoint));
+            Files.write(new File(root, "a.txt").toPath(), new byte[1]);
+            // whether or not the change has been seen yet, invalidation makes it visible at once
+            mountPoint.invalidate();
+            Assert.assertEquals(Collections.singletonList("a.txt"), names(mountPoint));
+            Assert.assertTrue(mountPoint.getChild("a.txt").isFile());
+
+            // a delete through the VFS is seen at once
+            Assert.assertTrue(mountPoint.getChild("a.txt").delete());
+            Assert.assertFalse(mountPoint.getChild("a.txt").exists());
+            Assert.assertEquals(Collections.emptyList(), names(mountPoint));
+        } finally {
+            handle.close();
+        }
+    }
+
+    @Test
+    public void testNegativeLookups() throws Exception {
+        final File root = folder.newFolder("negative");
+        final VirtualFile mountPoint = VFS.getChild("/cache/negative");
+        final Closeable handle = VFS.mountReal(root, mountPoint, true);
+        try {
+            final VirtualFile file = mountPoint.getChild("a.txt");
+            final VirtualFile nested = mountPoint.getChild("x/y/z.txt");
+            Assert.assertFalse(file.exists());
+            Assert.assertFalse(nested.exists());
+            Assert.assertFalse(nested.exists());
+
+            // a write through the VFS is seen at once, along with the directories made for it
+            VFSUtils.writeFile(file, new byte[1]);
+            Assert.assertTrue(file.isFile());
+            VFSUtils.writeFile(nested, new byte[2]);
+            Assert.assertTrue(mountPoint.getChild("x/y").isDirectory());
+            Assert.assertEquals(2L, nested.getSize());
+
+            // as is a copy
+            final File source = folder.newFolder("source");
+            Assert.assertTrue(new File(source, "dir").mkdir());
+            Files.write(new File(source, "dir/b.txt").toPath(), new byte[3]);
+            final VirtualFile copied = mountPoint.getChild("source/dir/b.txt");
+            Assert.assertFalse(copied.exists());
+            VFSUtils.recursiveCopy(source, mountPoint);
+            Assert.assertEquals(3L, copied.getSize());
+
+            // and a change made elsewhere is seen once it is reported
+            final VirtualFile outside = mountPoint.getChild("c/d.txt");
+            Assert.assertFalse(outside.exists());
+            Assert.assertTrue(new File(root, "c").mkdir());
+            Files.write(new File(root, "c/d.txt").toPath(), new byte[1]);
+            awaitTrue(() -> outside.exists());
+        } finally {
+            handle.close();
+        }
+    }
+
+    @Test
+    public void testFailedCopy() throws Exception {
+        final File root = folder.newFolder("failed");
+        final VirtualFile mountPoint = VFS.getChild("/cache/failed");
+        final Closeable handle = VFS.mountReal(root, mountPoint, true);
+        try {
+            final VirtualFile copied = mountPoint.getChild("missing.txt");
+            Assert.assertFalse(copied.exists());
+            // the copy is created before its source turns out not to exist
+            try {
+                VFSUtils.recursiveCopy(VFS.getChild(folder.getRoot().getPath()).getChild("missing.txt"), mountPoint);
+                Assert.fail("Expected an exception");
+            } catch (IOException expected) {
+            }
+            Assert.assertTrue(copied.exists());
+        } finally {
+            handle.close();
+        }
+    }
+
+    private static List<String> names(VirtualFile dir) {
+        final List<String> names = new ArrayList<String>();
+        for (VirtualFile child : dir.getChildren()) {
+            names.add(child.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static void awaitTrue(Callable<Boolean> condition) throws Exception {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30L);
+        while (!condition.call().booleanValue()) {
+            Assert.assertTrue("Change not seen", System.nanoTime() < deadline);
+            Thread.sleep(20L);
+        }
+    }
+}
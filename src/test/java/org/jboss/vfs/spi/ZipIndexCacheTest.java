@@ -0,0 +1,117 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZipIndexCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCachedIndex() throws Exception {
+        File jar = folder.newFile("test.jar");
+        writeJar(jar, "a/b/c.txt", "a/d.txt", "e.txt");
+        File dir = new File(folder.getRoot(), "cache");
+        ZipIndexCache cache = new ZipIndexCache(dir);
+
+        ZipIndex expected = readIndex(jar, null);
+        assertIndexEquals(expected, readIndex(jar, cache));
+        File[] cacheFiles = dir.listFiles();
+        Assert.assertEquals(1, cacheFiles.length);
+        long cachedTime = cacheFiles[0].lastModified();
+
+        // a second read is served from the cache file, which is left alone
+        assertIndexEquals(expected, readIndex(jar, cache));
+        Assert.assertEquals(cachedTime, cacheFiles[0].lastModified());
+
+        // a changed archive replaces the stale cache file
+        writeJar(jar, "a/b/c.txt", "f.txt");
+        ZipIndex changed = readIndex(jar, cache);
+        assertIndexEquals(readIndex(jar, null), changed);
+        Assert.assertNotEquals(ZipIndex.NOT_FOUND, changed.getChild(ZipIndex.ROOT, "f.txt"));
+        Assert.assertEquals(ZipIndex.NOT_FOUND, changed.getChild(ZipIndex.ROOT, "e.txt"));
+        Assert.assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    public void testCorruptCacheFile() throws Exception {
+        File jar = folder.newFile("test.jar");
+        writeJar(jar, "a/b/c.txt", "a/d.txt");
+        File dir = new File(folder.getRoot(), "cache");
+        ZipIndexCache cache = new ZipIndexCache(dir);
+        readIndex(jar, cache);
+        File cacheFile = dir.listFiles()[0];
+        byte[] bytes = Files.readAllBytes(cacheFile.toPath());
+        Files.write(cacheFile.toPath(), Arrays.copyOf(bytes, bytes.length - 10));
+
+        assertIndexEquals(readIndex(jar, null), readIndex(jar, cache));
+        Assert.assertEquals(bytes.length, cacheFile.length());
+    }
+
+    private static ZipIndex readIndex(File jar, ZipIndexCache cache) throws IOException {
+        ZipSource source = ZipSource.of(jar);
+        try {
+            return cache == null ? ZipIndex.read(source) : cache.getIndex(jar, source);
+        } finally {
+            source.close();
+        }
+    }
+
+    private static void writeJar(File file, String... names) throws IOException {
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(file));
+        try {
+            for (String name : names) {
+                jos.putNextEntry(new JarEntry(name));
+                jos.write(name.getBytes("UTF-8"));
+            }
+        } finally {
+            jos.close();
+        }
+    }
+
+    private static void assertIndexEquals(ZipIndex expected, ZipIndex actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int node = 0; node < expected.size(); node++) {
+            Assert.assertEquals(expected.getName(node), actual.getName(node));
+            Assert.assertEquals(expected.getParent(node), actual.getParent(node));
+            Assert.assertEquals(expected.isDirectory(node), actual.isDirectory(node));
+            Assert.assertEquals(expected.getChildNames(node), actual.getChildNames(node));
+            Assert.assertEquals(expected.getEntryName(node), actual.getEntryName(node));
+            Assert.assertEquals(expected.getSize(node), actual.getSize(node));
+            Assert.assertEquals(expected.getCompressedSize(node), actual.getCompressedSize(node));
+            Assert.assertEquals(expected.getTime(node), actual.getTime(node));
+            Assert.assertEquals(expected.getCrc(node), actual.getCrc(node));
+            Assert.assertEquals(expected.getMethod(node), actual.getMethod(node));
+            Assert.assertEquals(expected.getLocalHeaderOffset(node), actual.getLocalHeaderOffset(node));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vfs.spi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZipSourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(timeout = 30000L)
+    public void testTransferFromTruncatedFile() throws Exception {
+        final File file = folder.newFile("truncated.zip");
+        Files.write(file.toPath(), new byte[4096]);
+        try (ZipSource source = ZipSource.of(file)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            source.transferTo(0L, 1024L, Channels.newChannel(out));
+            Assert.assertEquals(1024, out.size());
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(2048L);
+            }
+            try {
+                source.transferTo(1024L, 3072L, Channels.newChannel(out));
+                Assert.fail("Expected an exception");
+            } catch (EOFException expected) {
+            }
+        }
+    }
+}
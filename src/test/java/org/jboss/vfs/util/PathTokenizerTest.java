@@ -0,0 +1,81 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2024, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.vfs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VirtualFile;
+import org.junit.Test;
+
+public class PathTokenizerTest {
+
+    @Test
+    public void testTokens() {
+        assertEquals(Arrays.asList("a", "b.c", "...", ".x", "x."), PathTokenizer.getTokens("//a\\b.c/.../.x/x./"));
+        assertEquals(Arrays.asList(), PathTokenizer.getTokens("///"));
+        List<String> tokens = PathTokenizer.getTokens("./a/../b/..");
+        assertEquals(5, tokens.size());
+        assertTrue(PathTokenizer.isCurrentToken(tokens.get(0)));
+        assertTrue(PathTokenizer.isReverseToken(tokens.get(2)));
+        assertTrue(PathTokenizer.isReverseToken(tokens.get(4)));
+    }
+
+    @Test
+    public void testCursor() {
+        StringBuilder path = new StringBuilder("/ab/./c/");
+        PathTokenizer.Cursor cursor = PathTokenizer.cursor(path);
+        assertTrue(cursor.next());
+        assertEquals(1, cursor.getStart());
+        assertEquals(3, cursor.getEnd());
+        assertEquals("ab", cursor.getToken());
+        assertFalse(cursor.isLast());
+        assertTrue(cursor.next());
+        assertTrue(cursor.isCurrentToken());
+        assertTrue(cursor.next());
+        assertEquals("c", cursor.getToken());
+        assertTrue(cursor.isLast());
+        assertFalse(cursor.next());
+        assertFalse(cursor.next());
+
+        String name = "single";
+        cursor = PathTokenizer.cursor(name);
+        assertTrue(cursor.next());
+        assertSame(name, cursor.getToken());
+    }
+
+    @Test
+    public void testPathNameRelativeTo() {
+        VirtualFile parent = VFS.getChild("/relative/a");
+        assertEquals("b/c.txt", VFS.getChild("/relative/a/b/c.txt").getPathNameRelativeTo(parent));
+        assertEquals("b", VFS.getChild("/relative/a/b").getPathNameRelativeTo(parent));
+        assertEquals("", VFS.getChild("/relative/a").getPathNameRelativeTo(parent));
+        assertEquals("relative/a/b", VFS.getChild("/relative/a/b").getPathNameRelativeTo(VFS.getRootVirtualFile()));
+        try {
+            VFS.getChild("/relative/x/b").getPathNameRelativeTo(parent);
+            throw new AssertionError("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}